@@ -0,0 +1,119 @@
+package com.shnok.javaserver.db.repository;
+
+import com.shnok.javaserver.db.AccountUpdate;
+import com.shnok.javaserver.db.DbFactory;
+import com.shnok.javaserver.db.entity.DBAccountInfo;
+import com.shnok.javaserver.db.interfaces.AccountInfoDao;
+import com.shnok.javaserver.enums.AccountDaoMode;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static com.shnok.javaserver.config.Configuration.server;
+
+/**
+ * Account reads and batched login writes through the Hibernate and the JDBC repositories,
+ * on a copy of the bundled H2 database.<br>
+ * Run with {@code gradlew jmh} from the loginserver directory, the database and the config are read from there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountRepositoryBenchmark {
+    private static final Path BUNDLED_DATABASE = Paths.get("db", "l2-unity-login.mv.db");
+    private static final int ACCOUNTS = 1000;
+
+    @Param({"HIBERNATE", "JDBC"})
+    private AccountDaoMode dao;
+
+    private Path directory;
+    private AccountInfoDao repository;
+    private String[] logins;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        if (!Files.exists(BUNDLED_DATABASE)) {
+            throw new IllegalStateException("Bundled database " + BUNDLED_DATABASE.toAbsolutePath() + " not found.");
+        }
+
+        // Writes go to a copy, the bundled database is left untouched
+        directory = Files.createTempDirectory("l2-unity-login-bench");
+        Files.copy(BUNDLED_DATABASE, directory.resolve(BUNDLED_DATABASE.getFileName()));
+        server.setProperty("database.url", "jdbc:h2:file:" + directory.resolve("l2-unity-login").toAbsolutePath());
+
+        logins = new String[ACCOUNTS];
+        JdbcAccountInfoRepository jdbc = JdbcAccountInfoRepository.getInstance();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            logins[i] = "bench" + i;
+            jdbc.createAccount(new DBAccountInfo(logins[i], "hash", 0, 1, "127.0.0.1", System.currentTimeMillis()));
+        }
+        if (jdbc.getAccountInfo(logins[ACCOUNTS - 1]) == null) {
+            throw new IllegalStateException("Could not create the benchmark accounts.");
+        }
+
+        repository = dao == AccountDaoMode.JDBC ? jdbc : AccountInfoRepository.getInstance();
+        if (dao == AccountDaoMode.HIBERNATE) {
+            // Not part of the first measured call
+            DbFactory.getSessionFactory();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (dao == AccountDaoMode.HIBERNATE) {
+            DbFactory.getSessionFactory().close();
+        }
+        DbFactory.getDataSource().close();
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public DBAccountInfo getAccountInfo() {
+        return repository.getAccountInfo(nextLogin());
+    }
+
+    @Benchmark
+    public boolean updateAccounts(UpdateBatch batch) {
+        List<AccountUpdate> updates = new ArrayList<>(batch.size);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < batch.size; i++) {
+            updates.add(AccountUpdate.activity(nextLogin(), "127.0.0.1", now));
+        }
+
+        if (!repository.updateAccounts(updates)) {
+            throw new IllegalStateException("Account update failed.");
+        }
+        return true;
+    }
+
+    private String nextLogin() {
+        String login = logins[next];
+        next = (next + 1) % ACCOUNTS;
+        return login;
+    }
+
+    /**
+     * Number of logins written by each flush of the account update queue.
+     */
+    @State(Scope.Benchmark)
+    public static class UpdateBatch {
+        @Param({"1", "100"})
+        private int size;
+    }
+}
@@ -0,0 +1,72 @@
+package com.shnok.javaserver.security;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the packet cipher, the legacy byte-by-byte engine with its separate checksum pass
+ * against the current single pass.<br>
+ * Run with {@code gradlew jmh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlowfishBenchmark {
+    // Init packets, login requests and the larger server lists
+    @Param({"16", "64", "256", "1024"})
+    private int size;
+
+    private LegacyNewCrypt legacy;
+    private NewCrypt crypt;
+    private byte[] plain;
+    private byte[] encrypted;
+    private byte[] packet;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(0x5EEDL);
+        byte[] key = new byte[16];
+        random.nextBytes(key);
+        legacy = new LegacyNewCrypt(key);
+        crypt = new NewCrypt(key);
+
+        plain = new byte[size];
+        random.nextBytes(plain);
+        encrypted = plain.clone();
+        crypt.appendChecksumAndCrypt(encrypted, 0, size);
+        packet = new byte[size];
+    }
+
+    @Benchmark
+    public byte[] legacyEncrypt() {
+        System.arraycopy(plain, 0, packet, 0, size);
+        LegacyNewCrypt.appendChecksum(packet, 0, size);
+        legacy.crypt(packet, 0, size);
+        return packet;
+    }
+
+    @Benchmark
+    public byte[] singlePassEncrypt() {
+        System.arraycopy(plain, 0, packet, 0, size);
+        crypt.appendChecksumAndCrypt(packet, 0, size);
+        return packet;
+    }
+
+    @Benchmark
+    public boolean legacyDecrypt() {
+        System.arraycopy(encrypted, 0, packet, 0, size);
+        legacy.decrypt(packet, 0, size);
+        return LegacyNewCrypt.verifyChecksum(packet, 0, size);
+    }
+
+    @Benchmark
+    public boolean singlePassDecrypt() {
+        System.arraycopy(encrypted, 0, packet, 0, size);
+        return crypt.decryptAndVerifyChecksum(packet, 0, size);
+    }
+}
@@ -1,9 +1,16 @@
 package com.shnok.javaserver;
 
+import com.shnok.javaserver.db.DbFactory;
+import com.shnok.javaserver.db.repository.AccountUpdateQueue;
+import com.shnok.javaserver.db.repository.CachedAccountInfoRepository;
 import com.shnok.javaserver.service.*;
+import com.shnok.javaserver.util.BufferPool;
+import com.shnok.javaserver.util.TimeoutWheel;
 import lombok.extern.log4j.Log4j2;
 import org.apache.logging.log4j.core.config.Configurator;
 
+import java.util.concurrent.CompletableFuture;
+
 @Log4j2
 public class Main {
     public static void main(String[] args) {
@@ -16,8 +23,18 @@ public class Main {
         Configurator.initialize(null, "conf/log4j2.properties");
 
         ThreadPoolManagerService.getInstance().initialize();
+        MetricsService.getInstance().initialize();
+        BufferPool.getInstance().initialize();
+        TimeoutWheel.getInstance().initialize();
+        CachedAccountInfoRepository.getInstance().initialize();
+        AccountUpdateQueue.getInstance().initialize();
         Runtime.getRuntime().addShutdownHook(ServerShutdownService.getInstance());
 
+        // The database starts while the login controller generates its keys
+        CompletableFuture<Void> database = CompletableFuture.runAsync(DbFactory::initialize);
+        LoginServerController.getInstance();
+        database.join();
+
         LoginServerListenerService.getInstance().initialize();
         LoginServerListenerService.getInstance().start();
 
@@ -6,5 +6,17 @@ import org.aeonbits.owner.ConfigCache;
 @Getter
 public class Configuration {
     public static final ServerConfig server =  ConfigCache.getOrCreate(ServerConfig.class);
-}
+    private static volatile ServerSnapshot serverSnapshot = new ServerSnapshot(server);
+
+    static {
+        server.addReloadListener(event -> serverSnapshot = new ServerSnapshot(server));
+        server.addPropertyChangeListener(event -> serverSnapshot = new ServerSnapshot(server));
+    }
 
+    /**
+     * @return the server config values read on every packet, as of the last reload
+     */
+    public static ServerSnapshot snapshot() {
+        return serverSnapshot;
+    }
+}
@@ -1,5 +1,8 @@
 package com.shnok.javaserver.config;
 
+import com.shnok.javaserver.enums.AccountDaoMode;
+import com.shnok.javaserver.enums.ThreadMode;
+import com.shnok.javaserver.enums.TransportMode;
 import org.aeonbits.owner.Config.HotReload;
 import org.aeonbits.owner.Config.LoadPolicy;
 import org.aeonbits.owner.Config.Sources;
@@ -22,12 +25,30 @@ public interface ServerConfig extends Mutable, Reloadable {
     String loginserverHost();
     @Key("loginserver.port")
     Integer loginserverPort();
+    @Key("loginserver.transport")
+    TransportMode loginserverTransport();
+    @Key("loginserver.nio.selector.threads")
+    Integer loginserverNioSelectorThreads();
     @Key("gameserver.host")
     String gameserverHost();
     @Key("gameserver.port")
     Integer gameserverPort();
     @Key("server.connection.timeout.ms")
     Integer serverConnectionTimeoutMs();
+    @Key("server.handshake.timeout.ms")
+    Integer serverHandshakeTimeoutMs();
+    @Key("gameserver.link.timeout.ms")
+    Integer gameserverLinkTimeoutMs();
+    @Key("server.thread.mode")
+    ThreadMode serverThreadMode();
+    @Key("server.thread.pool.size")
+    Integer serverThreadPoolSize();
+    @Key("server.crypto.pool.size")
+    Integer serverCryptoPoolSize();
+    @Key("server.io.pool.size")
+    Integer serverIoPoolSize();
+    @Key("server.stage.queue.size")
+    Integer serverStageQueueSize();
     @Key("accept.new.gameserver")
     Boolean acceptNewGameserver();
     @Key("server.account.autocreate")
@@ -40,6 +61,56 @@ public interface ServerConfig extends Mutable, Reloadable {
     Boolean showLicense();
     @Key("rsa.padding.mode")
     String rsaPaddingMode();
+    @Key("rsa.keys.count")
+    Integer rsaKeysCount();
+    @Key("rsa.keys.generator.threads")
+    Integer rsaKeysGeneratorThreads();
+    @Key("rsa.keys.rotation.minutes")
+    Integer rsaKeysRotationMinutes();
+    @Key("rsa.keys.cache.enabled")
+    Boolean rsaKeysCacheEnabled();
+    @Key("rsa.keys.cache.dir")
+    String rsaKeysCacheDir();
+    @Key("rsa.keys.cache.password")
+    String rsaKeysCachePassword();
+    @Key("rsa.keys.cache.max.age.hours")
+    Integer rsaKeysCacheMaxAgeHours();
+    @Key("blowfish.keys.refresh.minutes")
+    Integer blowfishKeysRefreshMinutes();
+
+    // Database
+    @Key("database.url")
+    String databaseUrl();
+    @Key("database.user")
+    String databaseUser();
+    @Key("database.password")
+    String databasePassword();
+    @Key("database.pool.max.size")
+    Integer databasePoolMaxSize();
+    @Key("database.pool.min.idle")
+    Integer databasePoolMinIdle();
+    @Key("database.connection.timeout.ms")
+    Integer databaseConnectionTimeoutMs();
+    @Key("database.idle.timeout.ms")
+    Integer databaseIdleTimeoutMs();
+    @Key("database.max.lifetime.ms")
+    Integer databaseMaxLifetimeMs();
+    @Key("database.statement.cache.size")
+    Integer databaseStatementCacheSize();
+    @Key("database.h2.cache.size.kb")
+    Integer databaseH2CacheSizeKb();
+    @Key("account.dao")
+    AccountDaoMode accountDao();
+    @Key("account.cache.size")
+    Integer accountCacheSize();
+    @Key("account.cache.ttl.seconds")
+    Integer accountCacheTtlSeconds();
+    @Key("account.cache.missing.ttl.seconds")
+    Integer accountCacheMissingTtlSeconds();
+    @Key("account.update.flush.interval.ms")
+    Integer accountUpdateFlushIntervalMs();
+    @Key("account.update.batch.size")
+    Integer accountUpdateBatchSize();
 
     //Logger
     @Key("logger.print.received-packets")
@@ -48,4 +119,6 @@ public interface ServerConfig extends Mutable, Reloadable {
     Boolean printSentPackets();
     @Key("logger.print.cryptography")
     Boolean printCryptography();
+    @Key("logger.print.metrics.interval.seconds")
+    Integer printMetricsIntervalSeconds();
 }
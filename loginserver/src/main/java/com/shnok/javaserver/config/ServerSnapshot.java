@@ -0,0 +1,36 @@
+package com.shnok.javaserver.config;
+
+/**
+ * Values of {@link ServerConfig} read on every packet, copied in plain fields.<br>
+ * Reading the config proxy goes through a reflective call and a property lookup each time, a snapshot is
+ * immutable and replaced as a whole by {@link Configuration} when the config is reloaded or modified.
+ */
+public final class ServerSnapshot {
+    private final boolean printReceivedPackets;
+    private final boolean printSentPackets;
+    private final boolean printCryptography;
+    private final String rsaPaddingMode;
+
+    public ServerSnapshot(ServerConfig config) {
+        printReceivedPackets = config.printReceivedPackets();
+        printSentPackets = config.printSentPackets();
+        printCryptography = config.printCryptography();
+        rsaPaddingMode = config.rsaPaddingMode();
+    }
+
+    public boolean printReceivedPackets() {
+        return printReceivedPackets;
+    }
+
+    public boolean printSentPackets() {
+        return printSentPackets;
+    }
+
+    public boolean printCryptography() {
+        return printCryptography;
+    }
+
+    public String rsaPaddingMode() {
+        return rsaPaddingMode;
+    }
+}
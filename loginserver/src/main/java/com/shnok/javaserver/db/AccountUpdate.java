@@ -0,0 +1,77 @@
+package com.shnok.javaserver.db;
+
+import com.shnok.javaserver.db.entity.DBAccountInfo;
+import lombok.Getter;
+
+/**
+ * Changes to the login columns of an account, waiting to be written.<br>
+ * Fields left null are not changed. Instances are immutable, merging two updates gives a new one.
+ */
+@Getter
+public class AccountUpdate {
+    private final String login;
+    private final String lastIp;
+    private final Long lastActive;
+    private final Integer lastServer;
+
+    private AccountUpdate(String login, String lastIp, Long lastActive, Integer lastServer) {
+        this.login = login;
+        this.lastIp = lastIp;
+        this.lastActive = lastActive;
+        this.lastServer = lastServer;
+    }
+
+    /**
+     * @param login the account login
+     * @param lastIp ip of the client logging in
+     * @param lastActive login time in milliseconds
+     * @return the update of a successful login
+     */
+    public static AccountUpdate activity(String login, String lastIp, long lastActive) {
+        return new AccountUpdate(login, lastIp, lastActive, null);
+    }
+
+    /**
+     * @param login the account login
+     * @param serverId the gameserver the account is joining
+     * @return the update of a gameserver login
+     */
+    public static AccountUpdate lastServer(String login, int serverId) {
+        return new AccountUpdate(login, null, null, serverId);
+    }
+
+    /**
+     * @param newer an update of the same account made after this one
+     * @return an update with the values of both, the newer ones first
+     */
+    public AccountUpdate merge(AccountUpdate newer) {
+        return new AccountUpdate(login,
+                newer.lastIp != null ? newer.lastIp : lastIp,
+                newer.lastActive != null ? newer.lastActive : lastActive,
+                newer.lastServer != null ? newer.lastServer : lastServer);
+    }
+
+    public boolean hasActivity() {
+        return lastActive != null;
+    }
+
+    public boolean hasLastServer() {
+        return lastServer != null;
+    }
+
+    /**
+     * Set the changed values on an account read from the database.
+     * @param info the account
+     */
+    public void applyTo(DBAccountInfo info) {
+        if (lastIp != null) {
+            info.setLastIp(lastIp);
+        }
+        if (lastActive != null) {
+            info.setLastActive(lastActive);
+        }
+        if (lastServer != null) {
+            info.setLastServer(lastServer);
+        }
+    }
+}
@@ -1,36 +1,48 @@
 package com.shnok.javaserver.db;
 
 import com.shnok.javaserver.db.entity.*;
+import com.shnok.javaserver.service.MetricsService;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.extern.log4j.Log4j2;
 import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.cfg.Configuration;
 
+import static com.shnok.javaserver.config.Configuration.server;
+
+@Log4j2
 public class DbFactory {
-    private static SessionFactory sessionFactory;
+    // Built at startup, or by the first thread needing them if the database is used before
+    private static volatile SessionFactory sessionFactory;
+    private static volatile HikariDataSource dataSource;
+
+    /**
+     * Open the connection pool and build the session factory, so the first logins don't wait for them.
+     */
+    public static void initialize() {
+        long start = System.currentTimeMillis();
+
+        HikariPoolMXBean pool = getDataSource().getHikariPoolMXBean();
+        getSessionFactory();
+
+        log.info("Database ready in {} ms.", System.currentTimeMillis() - start);
+
+        MetricsService.getInstance().register("database", () -> String.format("active=%d idle=%d total=%d waiting=%d",
+                pool.getActiveConnections(), pool.getIdleConnections(), pool.getTotalConnections(),
+                pool.getThreadsAwaitingConnection()));
+    }
 
     public static SessionFactory buildSessionFactory() {
         Configuration configuration = new Configuration();
 
-        // Hibernate HikariCP configuration
-        configuration.setProperty("hibernate.connection.provider_class", "org.hibernate.hikaricp.internal.HikariCPConnectionProvider");
+        // Hibernate shares the connection pool of the JDBC repositories
+        configuration.getProperties().put(AvailableSettings.DATASOURCE, getDataSource());
         configuration.setProperty("hibernate.hbm2ddl.auto", "none");
         configuration.setProperty("hibernate.show_sql", "false");
         configuration.setProperty("hibernate.format_sql", "true");
 
-        // HikariCP properties
-        configuration.setProperty("hibernate.hikari.dataSourceClassName", "org.h2.jdbcx.JdbcDataSource");
-        configuration.setProperty("hibernate.hikari.dataSource.url", "jdbc:h2:file:./db/l2-unity-login");
-        configuration.setProperty("hibernate.hikari.dataSource.user", "h2");
-        configuration.setProperty("hibernate.hikari.dataSource.password", "");
-
-        // Connection pool properties
-        configuration.setProperty("hibernate.hikari.maximumPoolSize", "5");
-        configuration.setProperty("hibernate.hikari.minimumIdle", "2");
-
-        // Timeout-related properties
-        configuration.setProperty("hibernate.hikari.connectionTimeout", "2000"); // in milliseconds
-        configuration.setProperty("hibernate.hikari.idleTimeout", "30000"); // in milliseconds
-        configuration.setProperty("hibernate.hikari.maxLifetime", "60000"); // in milliseconds
-
         // Add entity classes to configuration
         configuration.addAnnotatedClass(DBAccountInfo.class);
         configuration.addAnnotatedClass(DBGameServer.class);
@@ -40,30 +52,69 @@ public class DbFactory {
 
     public static SessionFactory getSessionFactory() {
         if (sessionFactory == null) {
-            sessionFactory = buildSessionFactory();
+            synchronized (DbFactory.class) {
+                if (sessionFactory == null) {
+                    sessionFactory = buildSessionFactory();
+                }
+            }
         }
 
         return sessionFactory;
     }
 
-    /*public static HikariDataSource buildDataSource() {
+    public static HikariDataSource buildDataSource() {
+        String url = server.databaseUrl();
+        int statementCacheSize = server.databaseStatementCacheSize();
+
         HikariConfig config = new HikariConfig();
-        config.setJdbcUrl("jdbc:mysql://localhost:3306/your_database");
-        config.setUsername("your_username");
-        config.setPassword("your_password");
-        config.addDataSourceProperty("cachePrepStmts", "true");
-        config.addDataSourceProperty("prepStmtCacheSize", "250");
-        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        config.setPoolName("LoginDB");
+        config.setUsername(server.databaseUser());
+        config.setPassword(server.databasePassword());
+
+        if (url.startsWith("jdbc:h2:")) {
+            // H2 refuses unknown connection properties, its settings go in the url
+            url = withH2Setting(url, "CACHE_SIZE", server.databaseH2CacheSizeKb());
+            url = withH2Setting(url, "QUERY_CACHE_SIZE", statementCacheSize);
+        } else if (statementCacheSize > 0) {
+            // Understood by the MySQL and MariaDB drivers
+            config.addDataSourceProperty("cachePrepStmts", "true");
+            config.addDataSourceProperty("prepStmtCacheSize", String.valueOf(statementCacheSize));
+            config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+            config.addDataSourceProperty("useServerPrepStmts", "true");
+        }
+        config.setJdbcUrl(url);
+
+        // Connection pool properties
+        config.setMaximumPoolSize(server.databasePoolMaxSize());
+        config.setMinimumIdle(server.databasePoolMinIdle());
+
+        // Timeout-related properties, in milliseconds
+        config.setConnectionTimeout(server.databaseConnectionTimeoutMs());
+        config.setIdleTimeout(server.databaseIdleTimeoutMs());
+        config.setMaxLifetime(server.databaseMaxLifetimeMs());
 
         return new HikariDataSource(config);
     }
 
+    /**
+     * @return the url with the setting appended, unchanged if the value is 0 or the url already sets it
+     */
+    private static String withH2Setting(String url, String setting, int value) {
+        if (value <= 0 || url.toUpperCase().contains(";" + setting + "=")) {
+            return url;
+        }
+        return url + ";" + setting + "=" + value;
+    }
+
     public static HikariDataSource getDataSource() {
         if (dataSource == null) {
-            dataSource = buildDataSource();
+            synchronized (DbFactory.class) {
+                if (dataSource == null) {
+                    dataSource = buildDataSource();
+                }
+            }
         }
 
         return dataSource;
-    }*/
-
+    }
 }
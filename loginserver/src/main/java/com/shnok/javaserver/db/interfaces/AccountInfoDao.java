@@ -1,13 +1,52 @@
 package com.shnok.javaserver.db.interfaces;
 
+import com.shnok.javaserver.db.AccountUpdate;
 import com.shnok.javaserver.db.entity.DBAccountInfo;
+import com.shnok.javaserver.service.ThreadPoolManagerService;
 
 import java.net.InetAddress;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 
 public interface AccountInfoDao {
+    /**
+     * @param login the account login
+     * @return the account, or null if it doesn't exist
+     * @throws RuntimeException if the database could not be read, a missing account is never assumed
+     */
     public DBAccountInfo getAccountInfo(String login);
     public void createAccount(DBAccountInfo accountInfo);
     public void updateAccount(DBAccountInfo accountInfo);
 
     void updateAccountLastServer(String account, int serverId);
+
+    /**
+     * Write the login columns of several accounts in a single transaction.
+     * @param updates the changes, one per account
+     * @return false if the transaction failed
+     */
+    boolean updateAccounts(Collection<AccountUpdate> updates);
+
+    /**
+     * Read an account on the database threads.
+     * @param login the account login
+     * @return the account, or null if it doesn't exist
+     */
+    default CompletableFuture<DBAccountInfo> getAccountInfoAsync(String login) {
+        return ThreadPoolManagerService.getInstance().supplyDatabase(() -> getAccountInfo(login));
+    }
+
+    default CompletableFuture<Void> createAccountAsync(DBAccountInfo accountInfo) {
+        return ThreadPoolManagerService.getInstance().supplyDatabase(() -> {
+            createAccount(accountInfo);
+            return null;
+        });
+    }
+
+    default CompletableFuture<Void> updateAccountAsync(DBAccountInfo accountInfo) {
+        return ThreadPoolManagerService.getInstance().supplyDatabase(() -> {
+            updateAccount(accountInfo);
+            return null;
+        });
+    }
 }
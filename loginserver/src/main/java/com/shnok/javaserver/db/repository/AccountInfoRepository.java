@@ -1,11 +1,14 @@
 package com.shnok.javaserver.db.repository;
 
+import com.shnok.javaserver.db.AccountUpdate;
 import com.shnok.javaserver.db.DbFactory;
 import com.shnok.javaserver.db.entity.DBAccountInfo;
 import com.shnok.javaserver.db.interfaces.AccountInfoDao;
 import lombok.extern.log4j.Log4j2;
 import org.hibernate.Session;
 
+import java.util.Collection;
+
 @Log4j2
 public class AccountInfoRepository implements AccountInfoDao {
     private static AccountInfoRepository instance;
@@ -21,10 +24,8 @@ public class AccountInfoRepository implements AccountInfoDao {
         try (Session session = DbFactory.getSessionFactory().openSession()) {
             return session.createQuery("SELECT i FROM DBAccountInfo i WHERE login=:login", DBAccountInfo.class)
                     .setParameter("login", login)
-                    .getSingleResult();
-        } catch (Exception e) {
-            log.warn(e.getMessage());
-            return null;
+                    .uniqueResultOptional()
+                    .orElse(null);
         }
     }
 
@@ -63,4 +64,17 @@ public class AccountInfoRepository implements AccountInfoDao {
             log.error("SQL ERROR: {}", e.getMessage(), e);
         }
     }
+
+    @Override
+    public boolean updateAccounts(Collection<AccountUpdate> updates) {
+        try (Session session = DbFactory.getSessionFactory().openSession()) {
+            session.beginTransaction();
+            session.doWork(connection -> JdbcAccountInfoRepository.writeUpdates(connection, updates));
+            session.getTransaction().commit();
+            return true;
+        } catch (Exception e) {
+            log.error("SQL ERROR: {}", e.getMessage(), e);
+            return false;
+        }
+    }
 }
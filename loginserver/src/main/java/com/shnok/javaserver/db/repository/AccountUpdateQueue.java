@@ -0,0 +1,150 @@
+package com.shnok.javaserver.db.repository;
+
+import com.shnok.javaserver.db.AccountUpdate;
+import com.shnok.javaserver.db.entity.DBAccountInfo;
+import com.shnok.javaserver.service.MetricsService;
+import com.shnok.javaserver.service.ThreadPoolManagerService;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.shnok.javaserver.config.Configuration.server;
+
+/**
+ * Write-behind queue of the account columns changed on every login.<br>
+ * Changes are merged per account and written in batches, on a timer or once enough accounts are waiting,
+ * so logins don't wait for a commit. Accounts read before their changes are written get them applied.
+ */
+@Log4j2
+public class AccountUpdateQueue {
+    private static final AccountUpdateQueue instance = new AccountUpdateQueue();
+    public static AccountUpdateQueue getInstance() {
+        return instance;
+    }
+
+    private final Map<String, AccountUpdate> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private final int batchSize;
+
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    private AccountUpdateQueue() {
+        batchSize = server.accountUpdateBatchSize();
+    }
+
+    public void initialize() {
+        int intervalMs = server.accountUpdateFlushIntervalMs();
+        ThreadPoolManagerService.getInstance().scheduleGeneralAtFixedRate(this::queueFlush,
+                intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        MetricsService.getInstance().register("account-updates", this::pollStats);
+    }
+
+    /**
+     * Queue a change, merged with the changes of the same account not written yet.
+     * @param update the change
+     */
+    public void queue(AccountUpdate update) {
+        pending.merge(update.getLogin(), update, AccountUpdate::merge);
+        queued.increment();
+
+        if (pending.size() >= batchSize) {
+            queueFlush();
+        }
+    }
+
+    /**
+     * Apply the changes not written yet to an account read from the database.
+     * @param info the account
+     */
+    public void applyPending(DBAccountInfo info) {
+        AccountUpdate update = pending.get(info.getLogin());
+        if (update != null) {
+            update.applyTo(info);
+        }
+    }
+
+    /**
+     * Flush on the io threads, unless a flush is already waiting there.
+     */
+    private void queueFlush() {
+        if (pending.isEmpty() || !flushQueued.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            ThreadPoolManagerService.getInstance().executeIO(() -> {
+                flushQueued.set(false);
+                flush();
+            });
+        } catch (RejectedExecutionException e) {
+            // Written by the next scheduled flush
+            flushQueued.set(false);
+        }
+    }
+
+    /**
+     * Write every waiting change, in batches.
+     * @return false if some changes could not be written, they are kept for the next flush
+     */
+    public synchronized boolean flush() {
+        List<AccountUpdate> batch = new ArrayList<>(Math.min(pending.size(), batchSize));
+        boolean success = true;
+
+        for (AccountUpdate update : pending.values()) {
+            batch.add(update);
+            if (batch.size() >= batchSize) {
+                success &= write(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            success &= write(batch);
+        }
+
+        return success;
+    }
+
+    private boolean write(List<AccountUpdate> batch) {
+        if (!CachedAccountInfoRepository.getInstance().updateAccounts(batch)) {
+            return false;
+        }
+
+        for (AccountUpdate update : batch) {
+            // Kept if the account changed again during the write
+            pending.remove(update.getLogin(), update);
+        }
+
+        written.add(batch.size());
+        batches.increment();
+        return true;
+    }
+
+    /**
+     * Write the remaining changes before the server stops.
+     */
+    public void shutdown() {
+        int count = pending.size();
+        if (flush()) {
+            log.info("Wrote {} pending account update(s).", count);
+        } else {
+            log.error("Could not write {} pending account update(s).", pending.size());
+        }
+    }
+
+    /**
+     * @return changes waiting and written since the previous call
+     */
+    public String pollStats() {
+        return String.format("pending=%d queued=%d written=%d batches=%d", pending.size(), queued.sumThenReset(),
+                written.sumThenReset(), batches.sumThenReset());
+    }
+}
@@ -0,0 +1,354 @@
+package com.shnok.javaserver.db.repository;
+
+import com.shnok.javaserver.db.AccountUpdate;
+import com.shnok.javaserver.db.entity.DBAccountInfo;
+import com.shnok.javaserver.db.interfaces.AccountInfoDao;
+import com.shnok.javaserver.enums.AccountDaoMode;
+import com.shnok.javaserver.service.MetricsService;
+import com.shnok.javaserver.service.ThreadPoolManagerService;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.shnok.javaserver.config.Configuration.server;
+
+/**
+ * Read-through cache of accounts in front of the account repository.<br>
+ * Accounts are kept for a limited time and the oldest are evicted first once the cache is full.
+ * Every write goes to the database, account writes drop the cached account while the batched login updates
+ * are applied to it. Callers get copies they are free to modify,
+ * with the changes still waiting in the {@link AccountUpdateQueue} applied.
+ * Logins found missing are remembered for a short time, and concurrent reads of the same login share one query.
+ */
+@Log4j2
+public class CachedAccountInfoRepository implements AccountInfoDao {
+    private static final int PURGE_INTERVAL_SECONDS = 30;
+
+    private static final CachedAccountInfoRepository instance = new CachedAccountInfoRepository(
+            server.accountDao() == AccountDaoMode.JDBC ? JdbcAccountInfoRepository.getInstance() :
+                    AccountInfoRepository.getInstance());
+    public static CachedAccountInfoRepository getInstance() {
+        return instance;
+    }
+
+    private final AccountInfoDao delegate;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final long missingTtlMillis;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Logins not found in the database, with the time they are looked up again
+    private final Map<String, Long> missing = new ConcurrentHashMap<>();
+    // Reads running on the database threads, joined by the lookups of the same login
+    private final Map<String, Read> loading = new ConcurrentHashMap<>();
+    // Entries in insertion order, some of them may have been replaced or invalidated since
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    // Loads started before a write must not cache what they read
+    private final AtomicLong writes = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder missingHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    private CachedAccountInfoRepository(AccountInfoDao delegate) {
+        this.delegate = delegate;
+        this.maxSize = server.accountCacheSize();
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(server.accountCacheTtlSeconds());
+        this.missingTtlMillis = TimeUnit.SECONDS.toMillis(server.accountCacheMissingTtlSeconds());
+    }
+
+    public void initialize() {
+        log.info("Accounts are read with {}.", delegate.getClass().getSimpleName());
+        MetricsService.getInstance().register("account-cache", this::pollStats);
+
+        if (maxSize <= 0) {
+            log.info("Account cache is disabled.");
+            return;
+        }
+
+        ThreadPoolManagerService.getInstance().scheduleGeneralAtFixedRate(this::purge,
+                PURGE_INTERVAL_SECONDS, PURGE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public DBAccountInfo getAccountInfo(String login) {
+        DBAccountInfo info = lookup(login);
+        if (info != null) {
+            AccountUpdateQueue.getInstance().applyPending(info);
+        }
+        return info;
+    }
+
+    /**
+     * Cached accounts and known missing logins are answered right away, the others go through the database threads.
+     * A lookup of a login already being read waits for that read instead of running its own.
+     */
+    @Override
+    public CompletableFuture<DBAccountInfo> getAccountInfoAsync(String login) {
+        DBAccountInfo info = cached(login);
+        if (info != null) {
+            AccountUpdateQueue.getInstance().applyPending(info);
+            return CompletableFuture.completedFuture(info);
+        }
+        if (isKnownMissing(login)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Read read = new Read();
+        Read inFlight = loading.putIfAbsent(login, read);
+        if (inFlight == null) {
+            inFlight = read;
+            AccountInfoDao.super.getAccountInfoAsync(login).whenComplete((loaded, e) -> {
+                loading.remove(login, read);
+                if (e != null) {
+                    read.result.completeExceptionally(e);
+                } else {
+                    read.result.complete(loaded);
+                }
+            });
+        } else {
+            coalesced.increment();
+        }
+
+        Read joined = inFlight;
+        return joined.result.thenCompose(loaded -> {
+            // Written during the read, what it returned may be outdated
+            if (joined.stale) {
+                return getAccountInfoAsync(login);
+            }
+            // Every caller gets its own copy of the shared read
+            return CompletableFuture.completedFuture(loaded == null ? null : copy(loaded));
+        });
+    }
+
+    private DBAccountInfo lookup(String login) {
+        if (maxSize <= 0) {
+            return load(login);
+        }
+
+        DBAccountInfo cached = cached(login);
+        if (cached != null || isKnownMissing(login)) {
+            return cached;
+        }
+
+        misses.increment();
+        long writesBefore = writes.get();
+        DBAccountInfo info = load(login);
+        if (info == null) {
+            cacheMissing(login, writesBefore);
+            return null;
+        }
+
+        cache(login, info, writesBefore);
+        return copy(info);
+    }
+
+    private DBAccountInfo cached(String login) {
+        if (maxSize <= 0) {
+            return null;
+        }
+
+        Entry entry = entries.get(login);
+        if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+
+        hits.increment();
+        return copy(entry.info);
+    }
+
+    private boolean isKnownMissing(String login) {
+        Long expiresAt = missing.get(login);
+        if (expiresAt == null || System.currentTimeMillis() >= expiresAt) {
+            return false;
+        }
+
+        missingHits.increment();
+        return true;
+    }
+
+    private DBAccountInfo load(String login) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getAccountInfo(login);
+        } finally {
+            loads.increment();
+            loadNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void createAccount(DBAccountInfo accountInfo) {
+        try {
+            delegate.createAccount(accountInfo);
+        } finally {
+            invalidate(accountInfo.getLogin());
+        }
+    }
+
+    @Override
+    public void updateAccount(DBAccountInfo accountInfo) {
+        try {
+            delegate.updateAccount(accountInfo);
+        } finally {
+            invalidate(accountInfo.getLogin());
+        }
+    }
+
+    @Override
+    public void updateAccountLastServer(String account, int serverId) {
+        try {
+            delegate.updateAccountLastServer(account, serverId);
+        } finally {
+            invalidate(account);
+        }
+    }
+
+    /**
+     * Cached accounts get the written values instead of being dropped, so they stay cached after a login.
+     */
+    @Override
+    public boolean updateAccounts(Collection<AccountUpdate> updates) {
+        boolean written = false;
+        try {
+            written = delegate.updateAccounts(updates);
+            return written;
+        } finally {
+            // Loads running during the write may have read the rows before it
+            writes.incrementAndGet();
+            if (written) {
+                for (AccountUpdate update : updates) {
+                    entries.computeIfPresent(update.getLogin(), (login, entry) -> entry.apply(update));
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop the cached account, the next lookup reads it from the database.
+     * @param login the account login
+     */
+    public void invalidate(String login) {
+        writes.incrementAndGet();
+        entries.remove(login);
+        missing.remove(login);
+        // Lookups from now on read the account again, those waiting on the current read read it again too
+        Read read = loading.remove(login);
+        if (read != null) {
+            read.stale = true;
+        }
+    }
+
+    private void cache(String login, DBAccountInfo info, long writesBefore) {
+        Entry entry = new Entry(info, System.currentTimeMillis() + ttlMillis);
+        entries.put(login, entry);
+
+        // A write ran during the load, what was read may already be outdated
+        if (writes.get() != writesBefore) {
+            entries.remove(login, entry);
+            return;
+        }
+
+        insertionOrder.add(entry);
+        while (entries.size() > maxSize) {
+            Entry oldest = insertionOrder.poll();
+            if (oldest == null) {
+                break;
+            }
+            if (entries.remove(oldest.info.getLogin(), oldest)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private void cacheMissing(String login, long writesBefore) {
+        // Logins made up by a flood of requests stop being remembered once the cache size is reached
+        if (missingTtlMillis <= 0 || missing.size() >= maxSize) {
+            return;
+        }
+
+        Long expiresAt = System.currentTimeMillis() + missingTtlMillis;
+        missing.put(login, expiresAt);
+
+        // Created during the load
+        if (writes.get() != writesBefore) {
+            missing.remove(login, expiresAt);
+        }
+    }
+
+    /**
+     * Drop the expired entries, they are all at the head of the insertion order.
+     */
+    private void purge() {
+        long now = System.currentTimeMillis();
+        missing.values().removeIf(expiresAt -> now >= expiresAt);
+
+        Entry oldest;
+        while ((oldest = insertionOrder.peek()) != null && oldest.isExpired(now)) {
+            insertionOrder.poll();
+            if (entries.remove(oldest.info.getLogin(), oldest)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private static DBAccountInfo copy(DBAccountInfo info) {
+        return new DBAccountInfo(info.getLogin(), info.getPassHash(), info.getAccessLevel(), info.getLastServer(),
+                info.getLastIp(), info.getLastActive());
+    }
+
+    /**
+     * @return cache size, lookups and database reads since the previous call
+     */
+    public String pollStats() {
+        long loadCount = loads.sumThenReset();
+        long nanos = loadNanos.sumThenReset();
+
+        return String.format("size=%d missing=%d hits=%d missingHits=%d misses=%d coalesced=%d evictions=%d " +
+                        "avgLoad=%.3fms", entries.size(), missing.size(), hits.sumThenReset(),
+                missingHits.sumThenReset(), misses.sumThenReset(), coalesced.sumThenReset(),
+                evictions.sumThenReset(), loadCount == 0 ? 0d : nanos / (loadCount * 1_000_000d));
+    }
+
+    /**
+     * A read running on the database threads, shared by every lookup of the login made meanwhile.
+     */
+    private static final class Read {
+        private final CompletableFuture<DBAccountInfo> result = new CompletableFuture<>();
+        // The account was written after the read started
+        private volatile boolean stale;
+    }
+
+    private static final class Entry {
+        // Replaced by an updated copy, the cached account itself is never modified
+        private volatile DBAccountInfo info;
+        private final long expiresAt;
+
+        private Entry(DBAccountInfo info, long expiresAt) {
+            this.info = info;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+
+        private Entry apply(AccountUpdate update) {
+            DBAccountInfo updated = copy(info);
+            update.applyTo(updated);
+            info = updated;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.shnok.javaserver.db.repository;
+
+import com.shnok.javaserver.db.AccountUpdate;
+import com.shnok.javaserver.db.DbFactory;
+import com.shnok.javaserver.db.entity.DBAccountInfo;
+import com.shnok.javaserver.db.interfaces.AccountInfoDao;
+import lombok.extern.log4j.Log4j2;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collection;
+
+/**
+ * Account repository running plain SQL on the pooled connections, without going through a Hibernate session.
+ */
+@Log4j2
+public class JdbcAccountInfoRepository implements AccountInfoDao {
+    private static final String SELECT_ACCOUNT =
+            "SELECT login, password, accessLevel, lastServer, lastIp, lastactive FROM ACCOUNTS WHERE login=?";
+    private static final String INSERT_ACCOUNT =
+            "INSERT INTO ACCOUNTS (login, password, accessLevel, lastServer, lastIp, lastactive) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_ACCOUNT =
+            "UPDATE ACCOUNTS SET password=?, accessLevel=?, lastServer=?, lastIp=?, lastactive=? WHERE login=?";
+    private static final String UPDATE_ACTIVITY = "UPDATE ACCOUNTS SET lastIp=?, lastactive=? WHERE login=?";
+    private static final String UPDATE_LAST_SERVER = "UPDATE ACCOUNTS SET lastServer=? WHERE login=?";
+
+    private static JdbcAccountInfoRepository instance;
+    public static JdbcAccountInfoRepository getInstance() {
+        if (instance == null) {
+            instance = new JdbcAccountInfoRepository();
+        }
+        return instance;
+    }
+
+    @Override
+    public DBAccountInfo getAccountInfo(String login) {
+        try (Connection connection = DbFactory.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_ACCOUNT)) {
+            statement.setString(1, login);
+
+            try (ResultSet result = statement.executeQuery()) {
+                if (!result.next()) {
+                    return null;
+                }
+
+                Long lastActive = result.getLong(6);
+                if (result.wasNull()) {
+                    lastActive = null;
+                }
+
+                return new DBAccountInfo(result.getString(1), result.getString(2), result.getInt(3),
+                        result.getInt(4), result.getString(5), lastActive);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read account " + login + ".", e);
+        }
+    }
+
+    @Override
+    public void createAccount(DBAccountInfo accountInfo) {
+        try (Connection connection = DbFactory.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(INSERT_ACCOUNT)) {
+            statement.setString(1, accountInfo.getLogin());
+            statement.setString(2, accountInfo.getPassHash());
+            statement.setInt(3, accountInfo.getAccessLevel());
+            statement.setInt(4, accountInfo.getLastServer());
+            statement.setString(5, accountInfo.getLastIp());
+            setLastActive(statement, 6, accountInfo.getLastActive());
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            log.error("SQL ERROR: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void updateAccount(DBAccountInfo accountInfo) {
+        try (Connection connection = DbFactory.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(UPDATE_ACCOUNT)) {
+            statement.setString(1, accountInfo.getPassHash());
+            statement.setInt(2, accountInfo.getAccessLevel());
+            statement.setInt(3, accountInfo.getLastServer());
+            statement.setString(4, accountInfo.getLastIp());
+            setLastActive(statement, 5, accountInfo.getLastActive());
+            statement.setString(6, accountInfo.getLogin());
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            log.error("SQL ERROR: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void updateAccountLastServer(String account, int serverId) {
+        try (Connection connection = DbFactory.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(UPDATE_LAST_SERVER)) {
+            statement.setInt(1, serverId);
+            statement.setString(2, account);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            log.error("SQL ERROR: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean updateAccounts(Collection<AccountUpdate> updates) {
+        try (Connection connection = DbFactory.getDataSource().getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                writeUpdates(connection, updates);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            log.error("SQL ERROR: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Write account updates as two statement batches, in the transaction of the connection.
+     * @param connection the connection
+     * @param updates the changes, one per account
+     * @throws SQLException if a batch fails
+     */
+    static void writeUpdates(Connection connection, Collection<AccountUpdate> updates) throws SQLException {
+        try (PreparedStatement activity = connection.prepareStatement(UPDATE_ACTIVITY);
+             PreparedStatement lastServer = connection.prepareStatement(UPDATE_LAST_SERVER)) {
+            for (AccountUpdate update : updates) {
+                if (update.hasActivity()) {
+                    activity.setString(1, update.getLastIp());
+                    activity.setLong(2, update.getLastActive());
+                    activity.setString(3, update.getLogin());
+                    activity.addBatch();
+                }
+                if (update.hasLastServer()) {
+                    lastServer.setInt(1, update.getLastServer());
+                    lastServer.setString(2, update.getLogin());
+                    lastServer.addBatch();
+                }
+            }
+
+            activity.executeBatch();
+            lastServer.executeBatch();
+        }
+    }
+
+    private static void setLastActive(PreparedStatement statement, int index, Long lastActive) throws SQLException {
+        if (lastActive == null) {
+            statement.setNull(index, Types.BIGINT);
+        } else {
+            statement.setLong(index, lastActive);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.shnok.javaserver.dto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the fields of a received frame in place, without copying it.<br>
+ * A connection keeps one reader and resets it on each frame, its packets being handled one at a time.
+ */
+public class PacketReader {
+    private ByteBuffer buffer;
+
+    /**
+     * Point the reader at a new frame, positioned on its packet type.
+     * @param data the array holding the frame
+     * @param offset offset of the frame in the array
+     * @param length length of the frame
+     * @return this reader
+     */
+    public PacketReader reset(byte[] data, int offset, int length) {
+        if (buffer == null || buffer.array() != data) {
+            buffer = ByteBuffer.wrap(data);
+        }
+
+        buffer.clear();
+        buffer.limit(offset + length);
+        buffer.position(offset);
+        return this;
+    }
+
+    public byte[] array() {
+        return buffer.array();
+    }
+
+    public byte peekB() {
+        return buffer.get(buffer.position());
+    }
+
+    public byte readB() {
+        return buffer.get();
+    }
+
+    public byte[] readB(int size) {
+        byte[] readBytes = new byte[size];
+        buffer.get(readBytes);
+        return readBytes;
+    }
+
+    /**
+     * Read a view of the next bytes, sharing the frame content.
+     * @param size the number of bytes
+     * @return a buffer over the bytes, positioned at 0
+     */
+    public ByteBuffer readSlice(int size) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(size);
+        skip(size);
+        return slice;
+    }
+
+    public int readI() {
+        return buffer.getInt();
+    }
+
+    public float readF() {
+        return buffer.getFloat();
+    }
+
+    public String readS() {
+        int strLen = readB() & 0xFF;
+        String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), strLen,
+                StandardCharsets.UTF_8);
+        skip(strLen);
+        return s;
+    }
+
+    public void skip(int size) {
+        buffer.position(buffer.position() + size);
+    }
+}
@@ -1,47 +1,56 @@
 package com.shnok.javaserver.dto;
 
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
 
 public abstract class ReceivablePacket extends Packet {
-    private int iterator;
+    private final PacketReader reader;
 
     public ReceivablePacket(byte[] data) {
-        super(data);
+        this(new PacketReader().reset(data, 0, data.length));
+    }
+
+    /**
+     * @param reader a reader positioned on the packet type of the frame
+     */
+    public ReceivablePacket(PacketReader reader) {
+        super(reader.peekB());
+        this.reader = reader;
+        packetData = reader.array();
         readB();
     }
 
     protected byte readB() {
-        return packetData[iterator++];
+        return reader.readB();
     }
 
     protected byte[] readB(int size) {
-        byte[] readBytes = Arrays.copyOfRange(packetData, iterator, iterator + size);
-        iterator += size;
-        return readBytes;
+        return reader.readB(size);
+    }
+
+    protected ByteBuffer readSlice(int size) {
+        return reader.readSlice(size);
     }
 
     protected int readI() {
-        byte[] array = new byte[4];
-        System.arraycopy(packetData, iterator, array, 0, 4);
-        iterator += 4;
-        return ByteBuffer.wrap(array).getInt();
+        return reader.readI();
     }
 
     protected float readF() {
-        byte[] array = new byte[4];
-        System.arraycopy(packetData, iterator, array, 0, 4);
-        iterator += 4;
-        return ByteBuffer.wrap(array).getFloat();
+        return reader.readF();
     }
 
     protected String readS() {
-        byte strLen = readB();
-        byte[] data = new byte[strLen];
-        System.arraycopy(packetData, iterator, data, 0, strLen);
-        iterator += strLen;
+        return reader.readS();
+    }
 
-        return new String(data, 0, strLen, StandardCharsets.UTF_8);
+    /**
+     * Copy the remaining bytes of a slice, for logging.
+     * @param slice the slice, left untouched
+     * @return a copy of the remaining bytes
+     */
+    protected static byte[] toArray(ByteBuffer slice) {
+        byte[] array = new byte[slice.remaining()];
+        slice.duplicate().get(array);
+        return array;
     }
 }
@@ -1,21 +1,37 @@
 package com.shnok.javaserver.dto;
 
 import lombok.extern.log4j.Log4j2;
-import org.apache.commons.lang3.ArrayUtils;
 
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 @Log4j2
 public abstract class SendablePacket extends Packet {
-    private final List<Byte> buffer = new ArrayList<>();
+    private static final int DEFAULT_CAPACITY = 32;
+
+    private byte[] buffer;
+    // Index 0 is reserved for the packet type, written when building the packet
+    private int position = 1;
 
     public SendablePacket(byte type) {
+        this(type, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param type the packet type
+     * @param capacity expected size of the built packet, padding included, to avoid growing the buffer
+     */
+    public SendablePacket(byte type, int capacity) {
         super(type);
+        buffer = new byte[Math.max(capacity, 8)];
+    }
+
+    /**
+     * For packets whose data is already built.
+     * @param data the packet data, padding included
+     */
+    protected SendablePacket(byte[] data) {
+        super(data);
     }
 
     protected void writeS(String s) {
@@ -30,52 +46,43 @@ public abstract class SendablePacket extends Packet {
     }
 
     protected void writeB(byte b) {
-        buffer.add(b);
+        ensureCapacity(1);
+        buffer[position++] = b;
     }
 
     protected void writeB(byte[] b) {
-        for (byte bb : b) {
-            buffer.add(bb);
-        }
+        ensureCapacity(b.length);
+        System.arraycopy(b, 0, buffer, position, b.length);
+        position += b.length;
     }
 
     protected void writeI(int i) {
-        Byte[] array = new Byte[]{(byte) ((i >> 24) & 0xff),
-                (byte) ((i >> 16) & 0xff),
-                (byte) ((i >> 8) & 0xff),
-                (byte) ((i) & 0xff)};
-
-        buffer.addAll(Arrays.asList(array));
+        ensureCapacity(4);
+        buffer[position++] = (byte) ((i >> 24) & 0xff);
+        buffer[position++] = (byte) ((i >> 16) & 0xff);
+        buffer[position++] = (byte) ((i >> 8) & 0xff);
+        buffer[position++] = (byte) (i & 0xff);
     }
 
     protected void writeL(long l) {
-        Byte[] array = new Byte[]{(byte) ((l >> 56) & 0xff),
-                (byte) ((l >> 48) & 0xff),
-                (byte) ((l >> 40) & 0xff),
-                (byte) ((l >> 32) & 0xff),
-                (byte) ((l >> 24) & 0xff),
-                (byte) ((l >> 16) & 0xff),
-                (byte) ((l >> 8) & 0xff),
-                (byte) (l & 0xff)};
-
-        buffer.addAll(Arrays.asList(array));
+        ensureCapacity(8);
+        buffer[position++] = (byte) ((l >> 56) & 0xff);
+        buffer[position++] = (byte) ((l >> 48) & 0xff);
+        buffer[position++] = (byte) ((l >> 40) & 0xff);
+        buffer[position++] = (byte) ((l >> 32) & 0xff);
+        buffer[position++] = (byte) ((l >> 24) & 0xff);
+        buffer[position++] = (byte) ((l >> 16) & 0xff);
+        buffer[position++] = (byte) ((l >> 8) & 0xff);
+        buffer[position++] = (byte) (l & 0xff);
     }
 
     protected void writeF(float f) {
-        int intBits = Float.floatToIntBits(f);
-        Byte[] array = new Byte[]{
-                (byte) (intBits >> 24), (byte) (intBits >> 16), (byte) (intBits >> 8), (byte) (intBits)};
-
-        buffer.addAll(Arrays.asList(array));
+        writeI(Float.floatToIntBits(f));
     }
 
     protected void write(byte[] data) {
-
-        buffer.add((byte) data.length);
-        List<Byte> byteList = IntStream.range(0, data.length)
-                .mapToObj((int j) -> data[j])
-                .collect(Collectors.toList());
-        buffer.addAll(byteList);
+        writeB((byte) data.length);
+        writeB(data);
     }
 
     protected void buildPacket() {
@@ -83,7 +90,7 @@ public abstract class SendablePacket extends Packet {
     }
 
     protected void buildPacket(boolean padXor) {
-        buffer.add(0, packetType);
+        buffer[0] = packetType;
 
         if(padXor) {
             padXor();
@@ -91,26 +98,31 @@ public abstract class SendablePacket extends Packet {
 
         padBuffer();
 
-        Byte[] array = buffer.toArray(new Byte[0]);
-        setData(ArrayUtils.toPrimitive(array));
+        setData(position == buffer.length ? buffer : Arrays.copyOf(buffer, position));
     }
 
     // Padding needed for blowfish encryption
     private void padBuffer() {
-        byte paddingLength = (byte) (buffer.size() % 8);
+        int paddingLength = position % 8;
         if(paddingLength > 0) {
-
-            paddingLength = (byte) (8 - paddingLength);
-
-            //log.debug("Packet needs a padding of {} bytes", paddingLength);
-
-            for(int i = 0; i < paddingLength; i++) {
-                buffer.add((byte) 0);
-            }
+            skip(8 - paddingLength);
         }
     }
 
+    // Room for the checksum or the XOR key, filled when encrypting
     private void padXor() {
-        writeI(0);
+        skip(4);
+    }
+
+    // The buffer is zero filled, skipped bytes are padding
+    private void skip(int length) {
+        ensureCapacity(length);
+        position += length;
+    }
+
+    private void ensureCapacity(int length) {
+        if (position + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + length));
+        }
     }
 }
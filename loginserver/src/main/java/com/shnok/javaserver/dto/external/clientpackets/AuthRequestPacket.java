@@ -1,57 +1,66 @@
 package com.shnok.javaserver.dto.external.clientpackets;
 
+import com.shnok.javaserver.dto.PacketReader;
 import com.shnok.javaserver.dto.ReceivablePacket;
+import com.shnok.javaserver.security.RSADecryptor;
 import com.shnok.javaserver.util.HexUtils;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 
-import javax.crypto.Cipher;
-import java.security.interfaces.RSAPrivateKey;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-import static com.shnok.javaserver.config.Configuration.server;
+import static com.shnok.javaserver.config.Configuration.snapshot;
 
 @Getter
 @Log4j2
 public class AuthRequestPacket extends ReceivablePacket {
-    private final byte[] raw = new byte[128];
     private String account;
     private byte[] passHashBytes;
 
-    public AuthRequestPacket(byte[] data, RSAPrivateKey privateKey) {
-        super(data);
+    // Copied out of the received frame, the decryption runs after the frame is released
+    private final byte[] encrypted;
 
-        byte[] decrypted;
+    public AuthRequestPacket(PacketReader reader) {
+        super(reader);
 
-        try {
-            final Cipher rsaCipher = Cipher.getInstance(server.rsaPaddingMode());
-            rsaCipher.init(Cipher.DECRYPT_MODE, privateKey);
+        encrypted = readB(0x80);
+    }
 
-            decrypted = Arrays.copyOfRange(data, 1,  1 + 128);
+    /**
+     * Decrypt the credentials block, done apart from reading the packet as it is CPU heavy.
+     * @param decryptor the decryptor of the key pair sent to the client
+     * @return true if the account and password hash could be read
+     */
+    public boolean decrypt(RSADecryptor decryptor) {
+        byte[] decrypted;
 
-            if(server.printCryptography()) {
-                log.debug("Encrypted client RSA: {}", Arrays.toString(decrypted));
+        try {
+            if(snapshot().printCryptography()) {
+                log.debug("Encrypted client RSA: {}", Arrays.toString(encrypted));
             }
 
-            decrypted = rsaCipher.doFinal(decrypted, 0x00, 0x80);
+            decrypted = decryptor.decrypt(ByteBuffer.wrap(encrypted));
 
-            if(server.printCryptography()) {
+            if(snapshot().printCryptography()) {
                 log.debug("Decrypted client RSA: {}", Arrays.toString(decrypted));
             }
         } catch (Exception ex) {
             log.warn("There has been an error trying to login!", ex);
-            return;
+            return false;
         }
 
-        int accountBlockLength = decrypted[0];
         try {
+            int accountBlockLength = decrypted[0];
             account = new String(decrypted, 1, accountBlockLength).trim().toLowerCase();
             passHashBytes = Arrays.copyOfRange(decrypted, accountBlockLength + 2, decrypted.length);
-            if(server.printCryptography()) {
+            if(snapshot().printCryptography()) {
                 log.debug("Password hash: {}", HexUtils.hexToString(passHashBytes));
             }
+            return true;
         } catch (Exception ex) {
             log.warn("There has been an error parsing credentials!", ex);
+            return false;
         }
     }
 }
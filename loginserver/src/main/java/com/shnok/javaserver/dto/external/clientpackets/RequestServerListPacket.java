@@ -1,5 +1,6 @@
 package com.shnok.javaserver.dto.external.clientpackets;
 
+import com.shnok.javaserver.dto.PacketReader;
 import com.shnok.javaserver.dto.ReceivablePacket;
 import lombok.Getter;
 
@@ -8,8 +9,8 @@ public class RequestServerListPacket extends ReceivablePacket {
     private final int skey1;
     private final int skey2;
 
-    public RequestServerListPacket(byte[] data) {
-        super(data);
+    public RequestServerListPacket(PacketReader reader) {
+        super(reader);
 
         skey1 = readI();
         skey2 = readI();
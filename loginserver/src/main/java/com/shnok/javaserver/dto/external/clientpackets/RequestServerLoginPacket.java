@@ -1,5 +1,6 @@
 package com.shnok.javaserver.dto.external.clientpackets;
 
+import com.shnok.javaserver.dto.PacketReader;
 import com.shnok.javaserver.dto.ReceivablePacket;
 import lombok.Getter;
 
@@ -9,8 +10,8 @@ public class RequestServerLoginPacket extends ReceivablePacket {
     private final int skey2;
     private final int serverId;
 
-    public RequestServerLoginPacket(byte[] data) {
-        super(data);
+    public RequestServerLoginPacket(PacketReader reader) {
+        super(reader);
 
         skey1 = readI();
         skey2 = readI();
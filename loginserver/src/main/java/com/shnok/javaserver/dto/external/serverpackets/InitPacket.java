@@ -3,9 +3,15 @@ package com.shnok.javaserver.dto.external.serverpackets;
 import com.shnok.javaserver.dto.SendablePacket;
 import com.shnok.javaserver.enums.packettypes.external.ServerPacketType;
 
+import java.util.Arrays;
+
 public class InitPacket extends SendablePacket {
+    private static final int SESSION_ID_OFFSET = 1;
+
     public InitPacket(byte[] scrambledMod, byte[] blowfishKey, int sessionId) {
-        super(ServerPacketType.Init.getValue());
+        // type + session id + modulus + key + xor key, padded
+        super(ServerPacketType.Init.getValue(),
+                (1 + 4 + 4 + scrambledMod.length + 4 + blowfishKey.length + 4 + 7) & ~7);
         writeI(sessionId);
         writeI(scrambledMod.length);
         writeB(scrambledMod);
@@ -14,4 +20,29 @@ public class InitPacket extends SendablePacket {
 
         buildPacket();
     }
+
+    /**
+     * Copy a template built by {@link #createTemplate(byte[], byte[])} and set its session id.
+     * @param template the packet of a key pair and blowfish key
+     * @param sessionId the session id of the client
+     */
+    public InitPacket(byte[] template, int sessionId) {
+        super(Arrays.copyOf(template, template.length));
+
+        byte[] data = getData();
+        data[SESSION_ID_OFFSET] = (byte) ((sessionId >> 24) & 0xff);
+        data[SESSION_ID_OFFSET + 1] = (byte) ((sessionId >> 16) & 0xff);
+        data[SESSION_ID_OFFSET + 2] = (byte) ((sessionId >> 8) & 0xff);
+        data[SESSION_ID_OFFSET + 3] = (byte) (sessionId & 0xff);
+    }
+
+    /**
+     * Build the clear packet shared by every client given this key pair and blowfish key.
+     * @param scrambledMod the scrambled RSA modulus
+     * @param blowfishKey the session blowfish key
+     * @return the packet data, with a zero session id
+     */
+    public static byte[] createTemplate(byte[] scrambledMod, byte[] blowfishKey) {
+        return new InitPacket(scrambledMod, blowfishKey, 0).getData();
+    }
 }
\ No newline at end of file
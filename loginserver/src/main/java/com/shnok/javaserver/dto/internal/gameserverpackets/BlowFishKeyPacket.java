@@ -1,41 +1,38 @@
 package com.shnok.javaserver.dto.internal.gameserverpackets;
 
+import com.shnok.javaserver.dto.PacketReader;
 import com.shnok.javaserver.dto.ReceivablePacket;
 import com.shnok.javaserver.security.NewCrypt;
 import com.shnok.javaserver.thread.GameServerThread;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 
-import javax.crypto.Cipher;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-import static com.shnok.javaserver.config.Configuration.server;
+import static com.shnok.javaserver.config.Configuration.snapshot;
 import static com.shnok.javaserver.enums.GameServerState.BF_CONNECTED;
-import static javax.crypto.Cipher.DECRYPT_MODE;
 
 @Log4j2
 @Getter
 public class BlowFishKeyPacket extends ReceivablePacket {
     private byte[] blowFishKey;
 
-    public BlowFishKeyPacket(byte[] data, GameServerThread gameServer) {
-        super(data);
+    public BlowFishKeyPacket(PacketReader reader, GameServerThread gameServer) {
+        super(reader);
 
         readB();
         readB();
         int blowfishLength = readI();
 
-        byte[] tempKey = readB(blowfishLength);
+        ByteBuffer tempKey = readSlice(blowfishLength);
 
-        if(server.printCryptography()) {
-            log.debug("Encrypted blowfish key [{}]: {}", tempKey.length, Arrays.toString(tempKey));
+        if(snapshot().printCryptography()) {
+            log.debug("Encrypted blowfish key [{}]: {}", blowfishLength, Arrays.toString(toArray(tempKey)));
         }
 
         try {
-            byte[] tempDecryptKey;
-            Cipher rsaCipher = Cipher.getInstance(server.rsaPaddingMode());
-            rsaCipher.init(DECRYPT_MODE, gameServer.getPrivateKey());
-            tempDecryptKey = rsaCipher.doFinal(tempKey);
+            byte[] tempDecryptKey = gameServer.getRsaDecryptor().decrypt(tempKey);
 
             // there are nulls before the key we must remove them
             int i = 0;
@@ -49,7 +46,7 @@ public class BlowFishKeyPacket extends ReceivablePacket {
             byte[] key = new byte[len - i];
             System.arraycopy(tempDecryptKey, i, key, 0, len - i);
 
-            if(server.printCryptography()) {
+            if(snapshot().printCryptography()) {
                 log.debug("Decrypted blowfish key: {}", Arrays.toString(key));
             }
 
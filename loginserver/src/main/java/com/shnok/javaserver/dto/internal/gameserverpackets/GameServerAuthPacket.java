@@ -1,5 +1,6 @@
 package com.shnok.javaserver.dto.internal.gameserverpackets;
 
+import com.shnok.javaserver.dto.PacketReader;
 import com.shnok.javaserver.dto.ReceivablePacket;
 import lombok.Getter;
 
@@ -14,8 +15,8 @@ public class GameServerAuthPacket extends ReceivablePacket {
     private final int subnetSize;
     private final String[] hosts;
 
-    public GameServerAuthPacket(byte[] data) {
-        super(data);
+    public GameServerAuthPacket(PacketReader reader) {
+        super(reader);
 
         id = readB();
         acceptAlternate = readB() == 1;
@@ -1,5 +1,6 @@
 package com.shnok.javaserver.dto.internal.gameserverpackets;
 
+import com.shnok.javaserver.dto.PacketReader;
 import com.shnok.javaserver.dto.ReceivablePacket;
 import lombok.Getter;
 
@@ -10,8 +11,8 @@ public class PlayerAuthRequestPacket extends ReceivablePacket {
     private final int playOkID2;
     private final int loginOkID1;
     private final int loginOkID2;
-    public PlayerAuthRequestPacket(byte[] data) {
-        super(data);
+    public PlayerAuthRequestPacket(PacketReader reader) {
+        super(reader);
 
         account = readS();
         playOkID1 = readI();
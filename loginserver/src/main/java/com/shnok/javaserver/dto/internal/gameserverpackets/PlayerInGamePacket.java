@@ -1,5 +1,6 @@
 package com.shnok.javaserver.dto.internal.gameserverpackets;
 
+import com.shnok.javaserver.dto.PacketReader;
 import com.shnok.javaserver.dto.ReceivablePacket;
 import lombok.Getter;
 
@@ -9,8 +10,8 @@ import java.util.List;
 @Getter
 public class PlayerInGamePacket extends ReceivablePacket {
     private final List<String> loggedUsers;
-    public PlayerInGamePacket(byte[] data) {
-        super(data);
+    public PlayerInGamePacket(PacketReader reader) {
+        super(reader);
         loggedUsers = new ArrayList<>();
 
         int playerCount = readI();
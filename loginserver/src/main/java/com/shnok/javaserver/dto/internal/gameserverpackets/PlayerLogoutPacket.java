@@ -1,5 +1,6 @@
 package com.shnok.javaserver.dto.internal.gameserverpackets;
 
+import com.shnok.javaserver.dto.PacketReader;
 import com.shnok.javaserver.dto.ReceivablePacket;
 import lombok.Getter;
 
@@ -7,8 +8,8 @@ import lombok.Getter;
 public class PlayerLogoutPacket extends ReceivablePacket {
     private final String player;
 
-    public PlayerLogoutPacket(byte[] data) {
-        super(data);
+    public PlayerLogoutPacket(PacketReader reader) {
+        super(reader);
 
        player = readS();
     }
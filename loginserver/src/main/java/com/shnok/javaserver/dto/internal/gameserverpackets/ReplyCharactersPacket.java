@@ -1,5 +1,6 @@
 package com.shnok.javaserver.dto.internal.gameserverpackets;
 
+import com.shnok.javaserver.dto.PacketReader;
 import com.shnok.javaserver.dto.ReceivablePacket;
 import lombok.Getter;
 
@@ -8,8 +9,8 @@ public class ReplyCharactersPacket extends ReceivablePacket {
     private final String account;
     private final int charCount;
 
-    public ReplyCharactersPacket(byte[] data) {
-        super(data);
+    public ReplyCharactersPacket(PacketReader reader) {
+        super(reader);
 
         account = readS();
         charCount = readB();
@@ -1,5 +1,6 @@
 package com.shnok.javaserver.dto.internal.gameserverpackets;
 
+import com.shnok.javaserver.dto.PacketReader;
 import com.shnok.javaserver.dto.ReceivablePacket;
 import lombok.Getter;
 
@@ -30,8 +31,8 @@ public class ServerStatusPacket extends ReceivablePacket {
             "Gm Only"
     };
 
-    public ServerStatusPacket(byte[] data) {
-        super(data);
+    public ServerStatusPacket(PacketReader reader) {
+        super(reader);
 
         attributes = new ArrayList<>();
 
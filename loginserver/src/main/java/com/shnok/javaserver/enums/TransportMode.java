@@ -0,0 +1,6 @@
+package com.shnok.javaserver.enums;
+
+public enum TransportMode {
+    BLOCKING,
+    NIO
+}
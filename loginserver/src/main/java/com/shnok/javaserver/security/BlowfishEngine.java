@@ -1,6 +1,9 @@
 package com.shnok.javaserver.security;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
 
 public final class BlowfishEngine {
     private static final int[] KP = new int[]{608135816, -2052912941, 320440878, 57701188, -1542899678, 698298832, 137296536, -330404727, 1160258022, 953160567, -1101764913, 887688300, -1062458953, -914599715, 1065670069, -1253635817, -1843997223, -1988494565};
@@ -8,6 +11,8 @@ public final class BlowfishEngine {
     private static final int[] KS1 = new int[]{1266315497, -1246549692, -613086930, -1004984797, -1385257296, 1235738493, -1662099272, -1880247706, -324367247, 1771706367, 1449415276, -1028546847, 422970021, 1963543593, -1604775104, -468174274, 1062508698, 1531092325, 1804592342, -1711849514, -1580033017, -269995787, 1294809318, -265986623, 1289560198, -2072974554, 1669523910, 35572830, 157838143, 1052438473, 1016535060, 1802137761, 1753167236, 1386275462, -1214491899, -1437595849, 1040679964, 2145300060, -1904392980, 1461121720, -1338320329, -263189491, -266592508, 33600511, -1374882534, 1018524850, 629373528, -603381315, -779021319, 2091462646, -1808644237, 586499841, 988145025, 935516892, -927631820, -1695294041, -1455136442, 265290510, -322386114, -1535828415, -499593831, 1005194799, 847297441, 406762289, 1314163512, 1332590856, 1866599683, -167115585, 750260880, 613907577, 1450815602, -1129346641, -560302305, -644675568, -1282691566, -590397650, 1427272223, 778793252, 1343938022, -1618686585, 2052605720, 1946737175, -1130390852, -380928628, -327488454, -612033030, 1661551462, -1000029230, -283371449, 840292616, -582796489, 616741398, 312560963, 711312465, 1351876610, 322626781, 1910503582, 271666773, -2119403562, 1594956187, 70604529, -677132437, 1007753275, 1495573769, -225450259, -1745748998, -1631928532, 504708206, -2031925904, -353800271, -2045878774, 1514023603, 1998579484, 1312622330, 694541497, -1712906993, -2143385130, 1382467621, 776784248, -1676627094, -971698502, -1797068168, -1510196141, 503983604, -218673497, 907881277, 423175695, 432175456, 1378068232, -149744970, -340918674, -356311194, -474200683, -1501837181, -1317062703, 26017576, -1020076561, -1100195163, 1700274565, 1756076034, -288447217, -617638597, 720338349, 1533947780, 354530856, 688349552, -321042571, 1637815568, 332179504, -345916010, 53804574, -1442618417, -1250730864, 1282449977, -711025141, -877994476, -288586052, 1617046695, -1666491221, -1292663698, 1686838959, 431878346, -1608291911, 1700445008, 1080580658, 1009431731, 832498133, -1071531785, -1688990951, -2023776103, -1778935426, 1648197032, -130578278, -1746719369, 300782431, 375919233, 238389289, -941219882, -1763778655, 2019080857, 1475708069, 455242339, -1685863425, 448939670, -843904277, 1395535956, -1881585436, 1841049896, 1491858159, 885456874, -30872223, -293847949, 1565136089, -396052509, 1108368660, 540939232, 1173283510, -1549095958, -613658859, -87339056, -951913406, -278217803, 1699691293, 1103962373, -669091426, -2038084153, -464828566, 1031889488, -815619598, 1535977030, -58162272, -1043876189, 2132092099, 1774941330, 1199868427, 1452454533, 157007616, -1390851939, 342012276, 595725824, 1480756522, 206960106, 497939518, 591360097, 863170706, -1919713727, -698356495, 1814182875, 2094937945, -873565088, 1082520231, -831049106, -1509457788, 435703966, -386934699, 1641649973, -1452693590, -989067582, 1510255612, -2146710820, -1639679442, -1018874748, -36346107, 236887753, -613164077, 274041037, 1734335097, -479771840, -976997275, 1899903192, 1026095262, -244449504, 356393447, -1884275382, -421290197, -612127241};
     private static final int[] KS2 = new int[]{-381855128, -1803468553, -162781668, -1805047500, 1091903735, 1979897079, -1124832466, -727580568, -737663887, 857797738, 1136121015, 1342202287, 507115054, -1759230650, 337727348, -1081374656, 1301675037, -1766485585, 1895095763, 1721773893, -1078195732, 62756741, 2142006736, 835421444, -1762973773, 1442658625, -635090970, -1412822374, 676362277, 1392781812, 170690266, -373920261, 1759253602, -683120384, 1745797284, 664899054, 1329594018, -393761396, -1249058810, 2062866102, -1429332356, -751345684, -830954599, 1080764994, 553557557, -638351943, -298199125, 991055499, 499776247, 1265440854, 648242737, -354183246, 980351604, -581221582, 1749149687, -898096901, -83167922, -654396521, 1161844396, -1169648345, 1431517754, 545492359, -26498633, -795437749, 1437099964, -1592419752, -861329053, -1713251533, -1507177898, 1060185593, 1593081372, -1876348548, -34019326, 69676912, -2135222948, 86519011, -1782508216, -456757982, 1220612927, -955283748, 133810670, 1090789135, 1078426020, 1569222167, 845107691, -711212847, -222510705, 1091646820, 628848692, 1613405280, -537335645, 526609435, 236106946, 48312990, -1352249391, -892239595, 1797494240, 859738849, 992217954, -289490654, -2051890674, -424014439, -562951028, 765654824, -804095931, -1783130883, 1685915746, -405998096, 1414112111, -2021832454, -1013056217, -214004450, 172450625, -1724973196, 980381355, -185008841, -1475158944, -1578377736, -1726226100, -613520627, -964995824, 1835478071, 660984891, -590288892, -248967737, -872349789, -1254551662, 1762651403, 1719377915, -824476260, -1601057013, -652910941, -1156370552, 1364962596, 2073328063, 1983633131, 926494387, -871278215, -2144935273, -198299347, 1749200295, -966120645, 309677260, 2016342300, 1779581495, -1215147545, 111262694, 1274766160, 443224088, 298511866, 1025883608, -488520759, 1145181785, 168956806, -653464466, -710153686, 1689216846, -628709281, -1094719096, 1692713982, -1648590761, -252198778, 1618508792, 1610833997, -771914938, -164094032, 2001055236, -684262196, -2092799181, -266425487, -1333771897, 1006657119, 2006996926, -1108824540, 1430667929, -1084739999, 1314452623, -220332638, -193663176, -2021016126, 1399257539, -927756684, -1267338667, 1190975929, 2062231137, -1960976508, -2073424263, -1856006686, 1181637006, 548689776, -1932175983, -922558900, -1190417183, -1149106736, 296247880, 1970579870, -1216407114, -525738999, 1714227617, -1003338189, -396747006, 166772364, 1251581989, 493813264, 448347421, 195405023, -1584991729, 677966185, -591930749, 1463355134, -1578971493, 1338867538, 1343315457, -1492745222, -1610435132, 233230375, -1694987225, 2000651841, -1017099258, 1638401717, -266896856, -1057650976, 6314154, 819756386, 300326615, 590932579, 1405279636, -1027467724, -1144263082, -1866680610, -335774303, -833020554, 1862657033, 1266418056, 963775037, 2089974820, -2031914401, 1917689273, 448879540, -744572676, -313240200, 150775221, -667058989, 1303187396, 508620638, -1318983944, -1568336679, 1817252668, 1876281319, 1457606340, 908771278, -574175177, -677760460, -1838972398, 1729034894, 1080033504};
     private static final int[] KS3 = new int[]{976866871, -738527793, -1413318857, 1522871579, 1555064734, 1336096578, -746444992, -1715692610, -720269667, -1089506539, -701686658, -956251013, -1215554709, 564236357, -1301368386, 1781952180, 1464380207, -1131123079, -962365742, 1699332808, 1393555694, 1183702653, -713881059, 1288719814, 691649499, -1447410096, -1399511320, -1101077756, -1577396752, 1781354906, 1676643554, -1702433246, -1064713544, 1126444790, -1524759638, -1661808476, -2084544070, -1679201715, -1880812208, -1167828010, 673620729, -1489356063, 1269405062, -279616791, -953159725, -145557542, 1057255273, 2012875353, -2132498155, -2018474495, -1693849939, 993977747, -376373926, -1640704105, 753973209, 36408145, -1764381638, 25011837, -774947114, 2088578344, 530523599, -1376601957, 1524020338, 1518925132, -534139791, -535190042, 1202760957, -309069157, -388774771, 674977740, -120232407, 2031300136, 2019492241, -311074731, -141160892, -472686964, 352677332, -1997247046, 60907813, 90501309, -1007968747, 1016092578, -1759044884, -1455814870, 457141659, 509813237, -174299397, 652014361, 1966332200, -1319764491, 55981186, -1967506245, 676427537, -1039476232, -1412673177, -861040033, 1307055953, 942726286, 933058658, -1826555503, -361066302, -79791154, 1361170020, 2001714738, -1464409218, -1020707514, 1222529897, 1679025792, -1565652976, -580013532, 1770335741, 151462246, -1281735158, 1682292957, 1483529935, 471910574, 1539241949, 458788160, -858652289, 1807016891, -576558466, 978976581, 1043663428, -1129001515, 1927990952, -94075717, -1922690386, -1086558393, -761535389, 1412390302, -1362987237, -162634896, 1947078029, -413461673, -126740879, -1353482915, 1077988104, 1320477388, 886195818, 18198404, -508558296, -1785185763, 112762804, -831610808, 1866414978, 891333506, 18488651, 661792760, 1628790961, -409780260, -1153795797, 876946877, -1601685023, 1372485963, 791857591, -1608533303, -534984578, -1127755274, -822013501, -1578587449, 445679433, -732971622, -790962485, -720709064, 54117162, -963561881, -1913048708, -525259953, -140617289, 1140177722, -220915201, 668550556, -1080614356, 367459370, 261225585, -1684794075, -85617823, -826893077, -1029151655, 314222801, -1228863650, -486184436, 282218597, -888953790, -521376242, 379116347, 1285071038, 846784868, -1625320142, -523005217, -744475605, -1989021154, 453669953, 1268987020, -977374944, -1015663912, -550133875, -1684459730, -435458233, 266596637, -447948204, 517658769, -832407089, -851542417, 370717030, -47440635, -2070949179, -151313767, -182193321, -1506642397, -1817692879, 1456262402, -1393524382, 1517677493, 1846949527, -1999473716, -560569710, -2118563376, 1280348187, 1908823572, -423180355, 846861322, 1172426758, -1007518822, -911584259, 1655181056, -1155153950, 901632758, 1897031941, -1308360158, -1228157060, -847864789, 1393639104, 373351379, 950779232, 625454576, -1170726756, -146354570, 2007998917, 544563296, -2050228658, -1964470824, 2058025392, 1291430526, 424198748, 50039436, 29584100, -689184263, -1865090967, -1503863136, 1057563949, -1039604065, -1219600078, -831004069, 1469046755, 985887462};
+    // Block words are little endian, BIG_ENDIAN gives the inverted order of the C# client
+    private static final VarHandle WORD = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
     private static final int ROUNDS = 16;
     private static final int BLOCK_SIZE = 8;
     private static final int SBOX_SK = 256;
@@ -126,8 +131,10 @@ public final class BlowfishEngine {
     }
 
     public void encryptBlock(byte[] src, int srcIndex, byte[] dst, int dstIndex) {
-        int xl = this.bytesTo32bits(src, srcIndex);
-        int xr = this.bytesTo32bits(src, srcIndex + 4);
+        this.encryptWords((int) WORD.get(src, srcIndex), (int) WORD.get(src, srcIndex + 4), dst, dstIndex);
+    }
+
+    private void encryptWords(int xl, int xr, byte[] dst, int dstIndex) {
         xl ^= this.P[0];
         xr ^= this.func(xl) ^ this.P[1];
         xl ^= this.func(xr) ^ this.P[2];
@@ -146,8 +153,8 @@ public final class BlowfishEngine {
         xr ^= this.func(xl) ^ this.P[15];
         xl ^= this.func(xr) ^ this.P[16];
         xr ^= this.P[17];
-        this.bits32ToBytes(xr, dst, dstIndex);
-        this.bits32ToBytes(xl, dst, dstIndex + 4);
+        WORD.set(dst, dstIndex, xr);
+        WORD.set(dst, dstIndex + 4, xl);
     }
 
     public void tryDecryptBlock(byte[] src, int srcIndex) throws IOException {
@@ -177,8 +184,10 @@ public final class BlowfishEngine {
     }
 
     public void decryptBlock(byte[] src, int srcIndex, byte[] dst, int dstIndex) {
-        int xl = this.bytesTo32bits(src, srcIndex);
-        int xr = this.bytesTo32bits(src, srcIndex + 4);
+        this.decryptWords((int) WORD.get(src, srcIndex), (int) WORD.get(src, srcIndex + 4), dst, dstIndex);
+    }
+
+    private void decryptWords(int xl, int xr, byte[] dst, int dstIndex) {
         xl ^= this.P[17];
         xr ^= this.func(xl) ^ this.P[16];
         xl ^= this.func(xr) ^ this.P[15];
@@ -197,30 +206,72 @@ public final class BlowfishEngine {
         xr ^= this.func(xl) ^ this.P[2];
         xl ^= this.func(xr) ^ this.P[1];
         xr ^= this.P[0];
-        this.bits32ToBytes(xr, dst, dstIndex);
-        this.bits32ToBytes(xl, dst, dstIndex + 4);
+        WORD.set(dst, dstIndex, xr);
+        WORD.set(dst, dstIndex + 4, xl);
     }
 
-    private int bytesTo32bits(byte[] src, int srcIndex) {
-        return (src[srcIndex + 3] & 255) << 24 | (src[srcIndex + 2] & 255) << 16 | (src[srcIndex + 1] & 255) << 8 | src[srcIndex] & 255;
+    /**
+     * Encrypt consecutive blocks in place.
+     * @param raw the data
+     * @param offset offset of the first block
+     * @param size number of bytes, multiple of the block size
+     */
+    public void encryptBlocks(byte[] raw, int offset, int size) {
+        for(int i = offset; i < offset + size; i += BLOCK_SIZE) {
+            this.encryptWords((int) WORD.get(raw, i), (int) WORD.get(raw, i + 4), raw, i);
+        }
     }
 
-    private void bits32ToBytes(int in, byte[] dst, int dstIndex) {
-        dst[dstIndex] = (byte)in;
-        dst[dstIndex + 1] = (byte)(in >> 8);
-        dst[dstIndex + 2] = (byte)(in >> 16);
-        dst[dstIndex + 3] = (byte)(in >> 24);
+    /**
+     * Decrypt consecutive blocks in place.
+     * @param raw the data
+     * @param offset offset of the first block
+     * @param size number of bytes, multiple of the block size
+     */
+    public void decryptBlocks(byte[] raw, int offset, int size) {
+        for(int i = offset; i < offset + size; i += BLOCK_SIZE) {
+            this.decryptWords((int) WORD.get(raw, i), (int) WORD.get(raw, i + 4), raw, i);
+        }
     }
 
-    // INVERTED FOR C#
-//    private int bytesTo32bits(byte[] b, int i) {
-//        return ((b[i] & 0xff) << 24) | ((b[i + 1] & 0xff) << 16) | ((b[i + 2] & 0xff) << 8) | (b[i + 3] & 0xff);
-//    }
-//
-//    private void bits32ToBytes(int in, byte[] b, int offset) {
-//        b[offset + 3] = (byte) (in);
-//        b[offset + 2] = (byte) (in >> 8);
-//        b[offset + 1] = (byte) (in >> 16);
-//        b[offset] = (byte) (in >> 24);
-//    }
-}
\ No newline at end of file
+    /**
+     * Write the xor of every word but the last one in the last word, and encrypt the blocks in place,
+     * in a single pass over the data.
+     * @param raw the data
+     * @param offset offset of the first block
+     * @param size number of bytes, multiple of the block size
+     */
+    public void encryptBlocksWithChecksum(byte[] raw, int offset, int size) {
+        int checksum = 0;
+        int last = offset + size - BLOCK_SIZE;
+        for(int i = offset; i < last; i += BLOCK_SIZE) {
+            int xl = (int) WORD.get(raw, i);
+            int xr = (int) WORD.get(raw, i + 4);
+            checksum ^= xl ^ xr;
+            this.encryptWords(xl, xr, raw, i);
+        }
+
+        int xl = (int) WORD.get(raw, last);
+        this.encryptWords(xl, checksum ^ xl, raw, last);
+    }
+
+    /**
+     * Decrypt the blocks in place and check that the last word is the xor of the others,
+     * in a single pass over the data.
+     * @param raw the data
+     * @param offset offset of the first block
+     * @param size number of bytes, multiple of the block size
+     * @return true if the checksum is valid
+     */
+    public boolean decryptBlocksAndVerifyChecksum(byte[] raw, int offset, int size) {
+        int checksum = 0;
+        int last = offset + size - BLOCK_SIZE;
+        for(int i = offset; i < last; i += BLOCK_SIZE) {
+            this.decryptWords((int) WORD.get(raw, i), (int) WORD.get(raw, i + 4), raw, i);
+            checksum ^= (int) WORD.get(raw, i) ^ (int) WORD.get(raw, i + 4);
+        }
+
+        this.decryptWords((int) WORD.get(raw, last), (int) WORD.get(raw, last + 4), raw, last);
+        return ((int) WORD.get(raw, last) ^ checksum) == (int) WORD.get(raw, last + 4);
+    }
+}
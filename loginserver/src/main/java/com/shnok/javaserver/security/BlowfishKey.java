@@ -0,0 +1,51 @@
+package com.shnok.javaserver.security;
+
+import com.shnok.javaserver.dto.SendablePacket;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * A session blowfish key with its expanded key schedule.<br>
+ * The cipher is only read once initialized, so a single instance is shared by every connection using this key.
+ */
+public class BlowfishKey {
+    private final byte[] key;
+    private final NewCrypt crypt;
+    // Packets with a constant content, encrypted with this key and framed, ready to be written
+    private final Map<Object, byte[]> encryptedFrames = new ConcurrentHashMap<>();
+
+    public BlowfishKey(byte[] key) {
+        this.key = key;
+        crypt = new NewCrypt(key);
+    }
+
+    public byte[] getKey() {
+        return key;
+    }
+
+    public NewCrypt getCrypt() {
+        return crypt;
+    }
+
+    /**
+     * Get the frame of a constant packet encrypted with this key, the packet is only built the first time.
+     * The returned array is shared and must not be modified.
+     * @param id identifies the packet content, such as its fail reason
+     * @param factory builds the packet
+     * @return the encrypted packet, length header included
+     */
+    public byte[] getEncryptedFrame(Object id, Supplier<? extends SendablePacket> factory) {
+        return encryptedFrames.computeIfAbsent(id, k -> {
+            byte[] data = factory.get().getData();
+            crypt.appendChecksumAndCrypt(data, 0, data.length);
+
+            byte[] frame = new byte[data.length + 2];
+            frame[0] = (byte) (data.length & 0xff);
+            frame[1] = (byte) ((data.length >> 8) & 0xff);
+            System.arraycopy(data, 0, frame, 2, data.length);
+            return frame;
+        });
+    }
+}
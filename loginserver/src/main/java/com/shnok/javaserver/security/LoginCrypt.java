@@ -5,7 +5,7 @@ import lombok.extern.log4j.Log4j2;
 import java.io.IOException;
 import java.util.Arrays;
 
-import static com.shnok.javaserver.config.Configuration.server;
+import static com.shnok.javaserver.config.Configuration.snapshot;
 
 @Log4j2
 public class LoginCrypt {
@@ -30,7 +30,7 @@ public class LoginCrypt {
 
     private static final NewCrypt _STATIC_CRYPT = new NewCrypt(STATIC_BLOWFISH_KEY);
     private NewCrypt _crypt = null;
-    private boolean _static = true;
+    private volatile boolean _static = true;
 
     /**
      * Method to initialize the blowfish cipher with dynamic key.
@@ -40,6 +40,21 @@ public class LoginCrypt {
         _crypt = new NewCrypt(key);
     }
 
+    /**
+     * Method to use an already expanded blowfish key, shared with other connections.
+     * @param key the blowfish key holding the dynamic blowfish cipher
+     */
+    public void setKey(BlowfishKey key) {
+        _crypt = key.getCrypt();
+    }
+
+    /**
+     * @return true until the first packet, encrypted with the static key, is sent
+     */
+    public boolean isStatic() {
+        return _static;
+    }
+
     /**
      * Method to decrypt an incoming login client packet.
      * @param raw array with encrypted data
@@ -56,8 +71,7 @@ public class LoginCrypt {
             throw new IOException("raw array too short for size starting from offset");
         }
 
-        _crypt.decrypt(raw, offset, size);
-        return NewCrypt.verifyChecksum(raw, offset, size);
+        return _crypt.decryptAndVerifyChecksum(raw, offset, size);
     }
 
     /**
@@ -72,25 +86,24 @@ public class LoginCrypt {
     public int encrypt(byte[] raw, final int offset, int size) throws IOException {
         if (_static) {
 
-            if(server.printCryptography()) {
+            if(snapshot().printCryptography()) {
                 log.debug("INIT Packet encryption:");
                 log.debug("CLEAR: " + Arrays.toString(raw));
             }
 
             NewCrypt.encXORPass(raw, offset, size, Rnd.nextInt());
-            if(server.printCryptography()) {
+            if(snapshot().printCryptography()) {
                 log.debug("XORED: " + Arrays.toString(raw));
             }
 
             _STATIC_CRYPT.crypt(raw, offset, size);
-            if(server.printCryptography()) {
+            if(snapshot().printCryptography()) {
                 log.debug("ENCRYPTED: " + Arrays.toString(raw));
             }
 
             _static = false;
         } else {
-            NewCrypt.appendChecksum(raw, offset, size);
-            _crypt.crypt(raw, offset, size);
+            _crypt.appendChecksumAndCrypt(raw, offset, size);
         }
 
         return size;
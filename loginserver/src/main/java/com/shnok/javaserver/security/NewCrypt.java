@@ -1,5 +1,9 @@
 package com.shnok.javaserver.security;
 
+/**
+ * Blowfish cipher of the login protocol.<br>
+ * The key schedule is never modified once expanded, instances can be shared between threads.
+ */
 public final class NewCrypt {
     private final BlowfishEngine _cipher;
 
@@ -98,16 +102,36 @@ public final class NewCrypt {
     }
 
     public void decrypt(byte[] raw, int offset, int size) {
-        for(int i = offset; i < offset + size; i += 8) {
-            this._cipher.decryptBlock(raw, i);
-        }
-
+        this._cipher.decryptBlocks(raw, offset, size);
     }
 
     public void crypt(byte[] raw, int offset, int size) {
-        for(int i = offset; i < offset + size; i += 8) {
-            this._cipher.encryptBlock(raw, i);
-        }
+        this._cipher.encryptBlocks(raw, offset, size);
+    }
 
+    /**
+     * Same as {@link #appendChecksum(byte[], int, int)} followed by {@link #crypt(byte[], int, int)},
+     * in a single pass over the data.
+     * @param raw array with plain data, the last 4 bytes receive the checksum
+     * @param offset offset where the data is located
+     * @param size number of bytes, multiple of 8
+     */
+    public void appendChecksumAndCrypt(byte[] raw, int offset, int size) {
+        this._cipher.encryptBlocksWithChecksum(raw, offset, size);
+    }
+
+    /**
+     * Same as {@link #decrypt(byte[], int, int)} followed by {@link #verifyChecksum(byte[], int, int)},
+     * in a single pass over the data.
+     * @param raw array with encrypted data
+     * @param offset offset where the data is located
+     * @param size number of bytes
+     * @return true if the size is a multiple of 8 and the checksum is valid, data is left encrypted otherwise
+     */
+    public boolean decryptAndVerifyChecksum(byte[] raw, int offset, int size) {
+        if ((size & 7) != 0 || size == 0) {
+            return false;
+        }
+        return this._cipher.decryptBlocksAndVerifyChecksum(raw, offset, size);
     }
 }
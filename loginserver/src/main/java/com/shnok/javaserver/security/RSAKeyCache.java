@@ -0,0 +1,227 @@
+package com.shnok.javaserver.security;
+
+import lombok.extern.log4j.Log4j2;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.shnok.javaserver.config.Configuration.server;
+
+/**
+ * File holding generated RSA key pairs, so a restart doesn't have to generate them again.<br>
+ * The file is only readable by its owner, and when a password is set its content is encrypted
+ * with AES-GCM using a key derived from the password.
+ */
+@Log4j2
+public class RSAKeyCache {
+    private static final int MAGIC = 0x4C4B4331;
+    private static final int SALT_LENGTH = 16;
+    private static final int IV_LENGTH = 12;
+    private static final int PBKDF2_ITERATIONS = 65536;
+    // Far above any configured key count, a larger count comes from a corrupt file
+    private static final int MAX_PAIRS = 65536;
+
+    private final Path file;
+    private final char[] password;
+    private final long maxAgeMillis;
+    private long createdAt;
+
+    /**
+     * @param file the cache file
+     * @param password password encrypting the file, or an empty string to only restrict its permissions
+     * @param maxAgeMillis age after which cached keys should be replaced
+     */
+    public RSAKeyCache(Path file, String password, long maxAgeMillis) {
+        this.file = file;
+        this.password = password.toCharArray();
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Get the configured cache of a keyring.
+     * @param name the keyring name, used as file name
+     * @return the cache, or null if key caching is disabled
+     */
+    public static RSAKeyCache fromConfig(String name) {
+        if (!server.rsaKeysCacheEnabled()) {
+            return null;
+        }
+
+        String password = server.rsaKeysCachePassword();
+        return new RSAKeyCache(Paths.get(server.rsaKeysCacheDir(), name + ".keys"), password == null ? "" : password,
+                TimeUnit.HOURS.toMillis(server.rsaKeysCacheMaxAgeHours()));
+    }
+
+    /**
+     * Read the cached key pairs.
+     * @return the key pairs, empty if the file doesn't exist or can't be read
+     */
+    public List<KeyPair> load() {
+        if (!Files.exists(file)) {
+            return Collections.emptyList();
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(decrypt(Files.readAllBytes(file))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a key cache file.");
+            }
+
+            createdAt = in.readLong();
+            int count = in.readInt();
+            if (count < 0 || count > MAX_PAIRS) {
+                throw new IOException("Invalid key count " + count + ".");
+            }
+            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+
+            // Not sized from the count, each pair read checks the file is really that long
+            List<KeyPair> pairs = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                PublicKey publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(readBytes(in)));
+                PrivateKey privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(readBytes(in)));
+                pairs.add(new KeyPair(publicKey, privateKey));
+            }
+            return pairs;
+        } catch (IOException | GeneralSecurityException e) {
+            log.warn("Could not read RSA key cache {}, keys will be generated: {}", file, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @return true if the loaded keys are older than the max age
+     */
+    public boolean isExpired() {
+        return System.currentTimeMillis() - createdAt > maxAgeMillis;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Replace the cached key pairs.
+     * @param pairs the key pairs
+     */
+    public void save(List<KeyPair> pairs) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(MAGIC);
+                out.writeLong(System.currentTimeMillis());
+                out.writeInt(pairs.size());
+                for (KeyPair pair : pairs) {
+                    writeBytes(out, pair.getPublic().getEncoded());
+                    writeBytes(out, pair.getPrivate().getEncoded());
+                }
+            }
+
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.deleteIfExists(temp);
+            createOwnerOnly(temp);
+            Files.write(temp, encrypt(bytes.toByteArray()));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            log.debug("Saved {} RSA key pair(s) to {}.", pairs.size(), file);
+        } catch (IOException | GeneralSecurityException e) {
+            log.warn("Could not write RSA key cache {}.", file, e);
+        }
+    }
+
+    private static void createOwnerOnly(Path path) throws IOException {
+        try {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system
+            Files.createFile(path);
+            path.toFile().setReadable(false, false);
+            path.toFile().setReadable(true, true);
+            path.toFile().setWritable(false, false);
+            path.toFile().setWritable(true, true);
+        }
+    }
+
+    private byte[] encrypt(byte[] data) throws GeneralSecurityException {
+        if (password.length == 0) {
+            return data;
+        }
+
+        SecureRandom random = new SecureRandom();
+        byte[] salt = new byte[SALT_LENGTH];
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(salt);
+        random.nextBytes(iv);
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, deriveKey(salt), new GCMParameterSpec(128, iv));
+        byte[] encrypted = cipher.doFinal(data);
+
+        byte[] result = new byte[SALT_LENGTH + IV_LENGTH + encrypted.length];
+        System.arraycopy(salt, 0, result, 0, SALT_LENGTH);
+        System.arraycopy(iv, 0, result, SALT_LENGTH, IV_LENGTH);
+        System.arraycopy(encrypted, 0, result, SALT_LENGTH + IV_LENGTH, encrypted.length);
+        return result;
+    }
+
+    private byte[] decrypt(byte[] data) throws GeneralSecurityException, IOException {
+        if (password.length == 0) {
+            return data;
+        }
+        if (data.length < SALT_LENGTH + IV_LENGTH) {
+            throw new IOException("Key cache file is truncated.");
+        }
+
+        byte[] salt = new byte[SALT_LENGTH];
+        System.arraycopy(data, 0, salt, 0, SALT_LENGTH);
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, deriveKey(salt), new GCMParameterSpec(128, data, SALT_LENGTH, IV_LENGTH));
+        return cipher.doFinal(data, SALT_LENGTH + IV_LENGTH, data.length - SALT_LENGTH - IV_LENGTH);
+    }
+
+    private SecretKey deriveKey(byte[] salt) throws GeneralSecurityException {
+        SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        byte[] key = factory.generateSecret(new PBEKeySpec(password, salt, PBKDF2_ITERATIONS, 256)).getEncoded();
+        return new SecretKeySpec(key, "AES");
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
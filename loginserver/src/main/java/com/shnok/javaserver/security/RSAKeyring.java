@@ -0,0 +1,257 @@
+package com.shnok.javaserver.security;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.RSAKeyGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Pool of RSA key pairs generated in the background.<br>
+ * Keys are generated in parallel and served as soon as the first one is ready. Rotating or growing the pool
+ * generates the new keys first and swaps them in, readers never wait for a generation.
+ * @param <T> the key type built from each generated pair
+ */
+@Log4j2
+public class RSAKeyring<T> {
+    private final String name;
+    private final int keySize;
+    private final Function<KeyPair, T> factory;
+    private final Function<T, KeyPair> pairOf;
+    private final ThreadPoolExecutor generator;
+    // Replaced as a whole on every change, readers only see complete snapshots
+    private volatile List<T> keys = Collections.emptyList();
+    private final AtomicInteger generating = new AtomicInteger();
+    private volatile Consumer<List<KeyPair>> generatedListener;
+
+    private final LongAdder generated = new LongAdder();
+    private final LongAdder generationNanos = new LongAdder();
+    private final AtomicLong maxGenerationNanos = new AtomicLong();
+
+    /**
+     * @param name name of the keyring, used in logs and thread names
+     * @param keySize RSA modulus size in bits
+     * @param threads number of threads generating keys
+     * @param factory builds the served key from a generated pair
+     * @param pairOf gives back the pair of a served key
+     */
+    public RSAKeyring(String name, int keySize, int threads, Function<KeyPair, T> factory,
+                      Function<T, KeyPair> pairOf) {
+        this.name = name;
+        this.keySize = keySize;
+        this.factory = factory;
+        this.pairOf = pairOf;
+
+        AtomicInteger count = new AtomicInteger();
+        generator = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + "KeyGenerator-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+        generator.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Fill the pool with the given number of keys, starting with the cached pairs if any.
+     * Generated keys are saved to the cache.
+     * @param count number of keys
+     * @param cache the key cache, or null
+     */
+    public void start(int count, RSAKeyCache cache) {
+        if (cache == null) {
+            grow(count);
+            return;
+        }
+
+        List<KeyPair> cached = cache.load();
+        load(cached.subList(0, Math.min(count, cached.size())));
+        log.info("Loaded {} {} RSA key pair(s) from {}.", size(), name, cache.getFile());
+
+        setGeneratedListener(cache::save);
+        grow(count - size());
+
+        if (size() > 0 && cache.isExpired()) {
+            rotate();
+        }
+    }
+
+    /**
+     * Add existing key pairs to the pool, such as pairs loaded from a cache.
+     * @param pairs the key pairs
+     */
+    public void load(List<KeyPair> pairs) {
+        List<T> loaded = new ArrayList<>(pairs.size());
+        for (KeyPair pair : pairs) {
+            try {
+                loaded.add(factory.apply(pair));
+            } catch (Exception e) {
+                log.warn("Ignoring unusable {} RSA key pair: {}", name, e.getMessage());
+            }
+        }
+
+        if (!loaded.isEmpty()) {
+            update(current -> current.addAll(loaded));
+        }
+    }
+
+    /**
+     * @param listener called with all the pairs of the pool each time the pending generations are done
+     */
+    public void setGeneratedListener(Consumer<List<KeyPair>> listener) {
+        generatedListener = listener;
+    }
+
+    /**
+     * Generate new keys and add them to the pool.
+     * @param count number of keys to add
+     */
+    public void grow(int count) {
+        for (int i = 0; i < count; i++) {
+            generating.incrementAndGet();
+            generator.execute(() -> {
+                try {
+                    T key = generate();
+                    if (key != null) {
+                        update(current -> current.add(key));
+                    }
+                } finally {
+                    onGenerated();
+                }
+            });
+        }
+    }
+
+    /**
+     * Replace every key of the pool, one at a time, the oldest first.
+     */
+    public void rotate() {
+        int count = keys.size();
+        for (int i = 0; i < count; i++) {
+            generating.incrementAndGet();
+            generator.execute(() -> {
+                try {
+                    T key = generate();
+                    if (key != null) {
+                        update(current -> {
+                            current.remove(0);
+                            current.add(key);
+                        });
+                    }
+                } finally {
+                    onGenerated();
+                }
+            });
+        }
+
+        log.debug("Rotating {} {} RSA key(s).", count, name);
+    }
+
+    /**
+     * Get a random key, waits only if no key was generated yet.
+     * @return a key of the pool
+     * @throws IllegalStateException if the pool is empty and no key is being generated anymore
+     */
+    public T get() {
+        List<T> current = keys;
+        if (current.isEmpty()) {
+            current = awaitKey();
+        }
+
+        return current.get(Rnd.nextInt(current.size()));
+    }
+
+    private synchronized List<T> awaitKey() {
+        while (keys.isEmpty()) {
+            // Every generation failed, waiting would block the caller forever
+            if (generating.get() == 0) {
+                throw new IllegalStateException("No " + name + " RSA key could be generated.");
+            }
+
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the first " + name + " RSA key.", e);
+            }
+        }
+
+        return keys;
+    }
+
+    private void onGenerated() {
+        if (generating.decrementAndGet() != 0) {
+            return;
+        }
+
+        synchronized (this) {
+            // Wake the callers waiting for a key, they fail if none was generated
+            notifyAll();
+        }
+
+        Consumer<List<KeyPair>> listener = generatedListener;
+        if (listener != null) {
+            List<KeyPair> pairs = new ArrayList<>();
+            keys.forEach(key -> pairs.add(pairOf.apply(key)));
+            listener.accept(pairs);
+        }
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    private synchronized void update(Consumer<List<T>> change) {
+        List<T> next = new ArrayList<>(keys);
+        change.accept(next);
+        keys = Collections.unmodifiableList(next);
+        notifyAll();
+    }
+
+    private T generate() {
+        long start = System.nanoTime();
+        try {
+            KeyPairGenerator keygen = KeyPairGenerator.getInstance("RSA");
+            keygen.initialize(new RSAKeyGenParameterSpec(keySize, RSAKeyGenParameterSpec.F4));
+            T key = factory.apply(keygen.generateKeyPair());
+
+            long nanos = System.nanoTime() - start;
+            generated.increment();
+            generationNanos.add(nanos);
+            maxGenerationNanos.accumulateAndGet(nanos, Math::max);
+
+            return key;
+        } catch (Exception e) {
+            log.error("There has been an error generating a {} RSA key pair!", name, e);
+            return null;
+        }
+    }
+
+    public void shutdown() {
+        generator.shutdownNow();
+    }
+
+    /**
+     * @return pool size and key generation time since the previous call
+     */
+    public String pollStats() {
+        long count = generated.sumThenReset();
+        long nanos = generationNanos.sumThenReset();
+        long maxNanos = maxGenerationNanos.getAndSet(0);
+
+        return String.format("keys=%d generating=%d generated=%d avgGen=%.1fms maxGen=%.1fms", keys.size(),
+                generating.get(), count, count == 0 ? 0d : nanos / (count * 1_000_000d), maxNanos / 1_000_000d);
+    }
+}
@@ -1,8 +1,13 @@
 package com.shnok.javaserver.security;
 
+import com.shnok.javaserver.dto.external.serverpackets.InitPacket;
+
 import java.math.BigInteger;
 import java.security.KeyPair;
 import java.security.interfaces.RSAPublicKey;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 public class ScrambledKeyPair {
 
@@ -10,15 +15,35 @@ public class ScrambledKeyPair {
 
     private final byte[] scrambledModulus;
 
+    private final RSADecryptor decryptor;
+
+    // Clear init packets per blowfish key, entries go away with the keys once they are refreshed
+    private final Map<BlowfishKey, byte[]> initTemplates = Collections.synchronizedMap(new WeakHashMap<>());
+
     public ScrambledKeyPair(KeyPair pPair) {
         pair = pPair;
         scrambledModulus = scrambleModulus(((RSAPublicKey) pair.getPublic()).getModulus());
+        decryptor = new RSADecryptor(pair);
     }
 
     public KeyPair getPair() {
         return pair;
     }
 
+    public RSADecryptor getDecryptor() {
+        return decryptor;
+    }
+
+    /**
+     * Get the clear init packet sent with this key pair and a blowfish key, built on first use.
+     * @param blowfishKey the session blowfish key
+     * @return the template, to be copied by {@link InitPacket#InitPacket(byte[], int)}
+     */
+    public byte[] getInitTemplate(BlowfishKey blowfishKey) {
+        return initTemplates.computeIfAbsent(blowfishKey,
+                key -> InitPacket.createTemplate(scrambledModulus, key.getKey()));
+    }
+
     public byte[] getScrambledModulus() {
         return scrambledModulus;
     }
@@ -3,26 +3,32 @@ package com.shnok.javaserver.service;
 import com.shnok.javaserver.db.entity.DBGameServer;
 import com.shnok.javaserver.db.repository.GameServerRepository;
 import com.shnok.javaserver.model.GameServerInfo;
-import com.shnok.javaserver.security.Rnd;
+import com.shnok.javaserver.security.RSADecryptor;
+import com.shnok.javaserver.security.RSAKeyCache;
+import com.shnok.javaserver.security.RSAKeyring;
 import com.shnok.javaserver.util.HexUtils;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.log4j.Log4j2;
 
-import java.security.KeyPair;
-import java.security.KeyPairGenerator;
-import java.security.spec.RSAKeyGenParameterSpec;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.shnok.javaserver.config.Configuration.server;
 
 @Log4j2
 @Getter
 @Setter
 public class GameServerController {
     private static final Map<Integer, GameServerInfo> GAME_SERVER_TABLE = new HashMap<>();
+    // Game server id of every account in game, across all attached game servers
+    private final Map<String, Integer> accountsInGame = new ConcurrentHashMap<>();
     private static final int KEYS_SIZE = 10;
-    private KeyPair[] keyPairs;
+    private RSAKeyring<RSADecryptor> rsaKeyring;
     private static GameServerController instance;
 
     public static GameServerController getInstance() {
@@ -37,20 +43,20 @@ public class GameServerController {
         log.info("{}: Loaded {} registered Game Servers.", getClass().getSimpleName(), GAME_SERVER_TABLE.size());
 
         initRSAKeys();
-        log.info("{}: Cached {} RSA keys for Game Server communication.", getClass().getSimpleName(), keyPairs.length);
+        log.info("{}: Generating {} RSA keys for Game Server communication.", getClass().getSimpleName(), KEYS_SIZE);
     }
 
     private void initRSAKeys() {
-        try {
-            final KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
-            keyGen.initialize(new RSAKeyGenParameterSpec(512, RSAKeyGenParameterSpec.F4));
-            keyPairs = new KeyPair[KEYS_SIZE];
-            for (int i = 0; i < KEYS_SIZE; i++) {
-                keyPairs[i] = keyGen.genKeyPair();
-            }
-        } catch (Exception e) {
-            log.error("{}: Error loading RSA keys for Game Server communication!", getClass().getSimpleName(), e);
+        rsaKeyring = new RSAKeyring<>("GameServer", 512, 1, RSADecryptor::new, RSADecryptor::getPair);
+        rsaKeyring.start(KEYS_SIZE, RSAKeyCache.fromConfig("gameserver"));
+
+        int rotationMinutes = server.rsaKeysRotationMinutes();
+        if (rotationMinutes > 0) {
+            ThreadPoolManagerService.getInstance().scheduleGeneralAtFixedRate(rsaKeyring::rotate,
+                    rotationMinutes, rotationMinutes, TimeUnit.MINUTES);
         }
+
+        MetricsService.getInstance().register("rsa-keys-gameserver", rsaKeyring::pollStats);
     }
 
     private void loadRegisteredGameServers() {
@@ -151,10 +157,47 @@ public class GameServerController {
     }
 
     /**
-     * Gets the key pair.
-     * @return a random key pair.
+     * Mark an account as in game on a game server.
+     * @param account the account name
+     * @param serverId the game server id
+     */
+    public void addAccountInGame(String account, int serverId) {
+        accountsInGame.put(account, serverId);
+    }
+
+    /**
+     * Remove an account from the in game index, unless it moved to another game server meanwhile.
+     * @param account the account name
+     * @param serverId the game server id
+     */
+    public void removeAccountInGame(String account, int serverId) {
+        accountsInGame.remove(account, serverId);
+    }
+
+    /**
+     * Remove the accounts of a disconnected game server from the in game index.
+     * @param accounts the accounts on the game server
+     * @param serverId the game server id
+     */
+    public void removeAccountsInGame(Collection<String> accounts, int serverId) {
+        accounts.forEach(account -> accountsInGame.remove(account, serverId));
+    }
+
+    /**
+     * Gets the game server an account is playing on.
+     * @param account the account name
+     * @return the game server info, or null if the account isn't in game
+     */
+    public GameServerInfo getGameServerOfAccount(String account) {
+        Integer serverId = accountsInGame.get(account);
+        return serverId == null ? null : getRegisteredGameServerById(serverId);
+    }
+
+    /**
+     * Gets the decryptor of a key pair.
+     * @return the decryptor of a random key pair.
      */
-    public KeyPair getKeyPair() {
-        return keyPairs[Rnd.nextInt(10)];
+    public RSADecryptor getRSADecryptor() {
+        return rsaKeyring.get();
     }
 }
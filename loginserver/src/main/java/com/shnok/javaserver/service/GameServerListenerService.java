@@ -67,7 +67,7 @@ public class GameServerListenerService extends Thread {
 
     public void addGameServer(Socket socket) {
         GameServerThread client = new GameServerThread(socket);
-        client.start();
+        ThreadPoolManagerService.getInstance().startConnectionThread(client);
         gameservers.add(client);
     }
 
@@ -1,33 +1,43 @@
 package com.shnok.javaserver.service;
 
-import com.shnok.javaserver.db.repository.AccountInfoRepository;
+import com.shnok.javaserver.db.AccountUpdate;
+import com.shnok.javaserver.db.repository.AccountUpdateQueue;
 import com.shnok.javaserver.enums.ServerStatus;
 import com.shnok.javaserver.model.GameServerInfo;
 import com.shnok.javaserver.model.SessionKey;
+import com.shnok.javaserver.security.BlowfishKey;
+import com.shnok.javaserver.security.RSADecryptor;
+import com.shnok.javaserver.security.RSAKeyCache;
+import com.shnok.javaserver.security.RSAKeyring;
 import com.shnok.javaserver.security.Rnd;
 import com.shnok.javaserver.security.ScrambledKeyPair;
+import com.shnok.javaserver.thread.GameServerThread;
 import com.shnok.javaserver.thread.LoginClientThread;
+import com.shnok.javaserver.thread.SelectorThread;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 
 import javax.crypto.Cipher;
 import java.net.Socket;
-import java.security.KeyPairGenerator;
+import java.nio.channels.SocketChannel;
+import java.security.KeyPair;
 import java.security.interfaces.RSAPrivateKey;
-import java.security.spec.RSAKeyGenParameterSpec;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static com.shnok.javaserver.config.Configuration.server;
-import static java.security.spec.RSAKeyGenParameterSpec.F4;
 
 @Log4j2
 @Getter
 public class LoginServerController {
-    private final List<LoginClientThread> clients = new ArrayList<>();
-    protected final ScrambledKeyPair[] keyPairs;
-    protected byte[][] blowfishKeys;
+    private final Set<LoginClientThread> clients = ConcurrentHashMap.newKeySet();
+    private final Map<String, LoginClientThread> clientsByLogin = new ConcurrentHashMap<>();
+    private final Map<Integer, LoginClientThread> clientsBySessionId = new ConcurrentHashMap<>();
+    protected final RSAKeyring<ScrambledKeyPair> rsaKeyring;
+    protected volatile BlowfishKey[] blowfishKeys;
     private static final int BLOWFISH_KEYS = 20;
 
     private static LoginServerController instance;
@@ -41,25 +51,40 @@ public class LoginServerController {
     public LoginServerController() {
         log.info("Loading Login Controller...");
 
-        keyPairs = new ScrambledKeyPair[10];
-
-        try {
-            final KeyPairGenerator keygen = KeyPairGenerator.getInstance("RSA");
-            final RSAKeyGenParameterSpec spec = new RSAKeyGenParameterSpec(1024, F4);
-            keygen.initialize(spec);
-            for (int i = 0; i < 10; i++) {
-                keyPairs[i] = new ScrambledKeyPair(keygen.generateKeyPair());
-            }
+        int generatorThreads = server.rsaKeysGeneratorThreads();
+        if (generatorThreads <= 0) {
+            generatorThreads = Runtime.getRuntime().availableProcessors();
+        }
 
-            testCipher((RSAPrivateKey) keyPairs[0].getPair().getPrivate());
+        rsaKeyring = new RSAKeyring<>("Login", 1024, generatorThreads, this::createScrambledKeyPair,
+                ScrambledKeyPair::getPair);
+        rsaKeyring.start(server.rsaKeysCount(), RSAKeyCache.fromConfig("login"));
+        log.info("Serving {} KeyPairs for RSA communication, the missing ones are generated in the background.",
+                server.rsaKeysCount());
 
-            log.info("Cached 10 KeyPairs for RSA communication.");
-        } catch (Exception ex) {
-            log.error("There has been an error loading the key pairs!", ex);
+        int rotationMinutes = server.rsaKeysRotationMinutes();
+        if (rotationMinutes > 0) {
+            ThreadPoolManagerService.getInstance().scheduleGeneralAtFixedRate(rsaKeyring::rotate,
+                    rotationMinutes, rotationMinutes, TimeUnit.MINUTES);
         }
 
         // Store keys for blowfish communication
         generateBlowFishKeys();
+
+        MetricsService.getInstance().register("clients", () ->
+                String.format("connected=%d authed=%d", clients.size(), clientsByLogin.size()));
+        MetricsService.getInstance().register("rsa", RSADecryptor::pollStats);
+        MetricsService.getInstance().register("rsa-keys-login", rsaKeyring::pollStats);
+    }
+
+    private ScrambledKeyPair createScrambledKeyPair(KeyPair pair) {
+        ScrambledKeyPair scrambledKeyPair = new ScrambledKeyPair(pair);
+        try {
+            testCipher((RSAPrivateKey) pair.getPrivate());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return scrambledKeyPair;
     }
 
     private void testCipher(RSAPrivateKey key) throws Exception {
@@ -69,54 +94,111 @@ public class LoginServerController {
     }
 
     private void generateBlowFishKeys() {
-        blowfishKeys = new byte[BLOWFISH_KEYS][16];
+        blowfishKeys = createBlowFishKeys();
+
+        log.info("Stored {} keys for Blowfish communication.", blowfishKeys.length);
+
+        int refreshMinutes = server.blowfishKeysRefreshMinutes();
+        if (refreshMinutes > 0) {
+            ThreadPoolManagerService.getInstance().scheduleGeneralAtFixedRate(this::refreshBlowFishKeys,
+                    refreshMinutes, refreshMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Expanding a key schedule costs hundreds of block encryptions, it is done once per key here
+     * and connections only get a reference to it.
+     * @return new expanded blowfish keys
+     */
+    private BlowfishKey[] createBlowFishKeys() {
+        BlowfishKey[] keys = new BlowfishKey[BLOWFISH_KEYS];
 
         for (int i = 0; i < BLOWFISH_KEYS; i++) {
-            for (int j = 0; j < blowfishKeys[i].length; j++) {
-                blowfishKeys[i][j] = (byte) (Rnd.nextInt(255) + 1);
+            byte[] key = new byte[16];
+            for (int j = 0; j < key.length; j++) {
+                key[j] = (byte) (Rnd.nextInt(255) + 1);
             }
+            keys[i] = new BlowfishKey(key);
         }
 
-        log.info("Stored {} keys for Blowfish communication.", blowfishKeys.length);
+        return keys;
     }
 
+    /**
+     * Replace the whole key pool, connected clients keep the key they were given.
+     */
+    public void refreshBlowFishKeys() {
+        blowfishKeys = createBlowFishKeys();
+
+        log.debug("Refreshed {} keys for Blowfish communication.", blowfishKeys.length);
+    }
 
     public void addClient(Socket socket) {
         LoginClientThread client = new LoginClientThread(socket);
-        client.start();
+        addClient(client);
+        ThreadPoolManagerService.getInstance().startConnectionThread(client);
+    }
+
+    public void addClient(SocketChannel channel, SelectorThread selectorThread) {
+        LoginClientThread client = new LoginClientThread(channel, selectorThread);
+        addClient(client);
+        selectorThread.register(client.getSelectorConnection());
+    }
+
+    private void addClient(LoginClientThread client) {
         clients.add(client);
+        // Drawn again while another client has it, the init packet carrying it is only sent afterwards
+        while (clientsBySessionId.putIfAbsent(client.getSessionId(), client) != null) {
+            client.setSessionId(Rnd.nextInt());
+        }
     }
 
-    public LoginClientThread getClient(String login) {
-        synchronized (clients) {
-            for (LoginClientThread client : clients) {
-                if (client.getUsername() == null) {
-                    continue;
-                }
-                if (client.getUsername().equals(login)) {
-                    return client;
-                }
-            }
+    /**
+     * Atomically bind an account to a client, an account can only be checked in by one client at a time.
+     * @param login the account name
+     * @param client the client logging in
+     * @return the client already checked in with this account, or null if the check in succeeded
+     */
+    public LoginClientThread checkInClient(String login, LoginClientThread client) {
+        LoginClientThread current = clientsByLogin.putIfAbsent(login, client);
+        if (current == null) {
+            client.setUsername(login);
+        }
+        return current;
+    }
 
+    public LoginClientThread getClient(String login) {
+        if (login == null) {
             return null;
         }
+        return clientsByLogin.get(login);
+    }
+
+    public LoginClientThread getClientBySessionId(int sessionId) {
+        return clientsBySessionId.get(sessionId);
     }
 
     public void removeClient(LoginClientThread s) {
-        synchronized (clients) {
-            clients.remove(s);
+        clients.remove(s);
+        clientsBySessionId.remove(s.getSessionId(), s);
+        if (s.getUsername() != null) {
+            clientsByLogin.remove(s.getUsername(), s);
         }
     }
 
-    public List<LoginClientThread> getAllClients() {
+    public Collection<LoginClientThread> getAllClients() {
         return clients;
     }
 
+    public int getClientCount() {
+        return clients.size();
+    }
+
     public ScrambledKeyPair getScrambledRSAKeyPair() {
-        return keyPairs[Rnd.nextInt(10)];
+        return rsaKeyring.get();
     }
 
-    public byte[] getBlowfishKey() {
+    public BlowfishKey getBlowfishKey() {
         return blowfishKeys[(int) (Math.random() * BLOWFISH_KEYS)];
     }
 
@@ -130,8 +212,11 @@ public class LoginServerController {
         client.setExpectedCharacterCount(serverList.size());
 
         for (GameServerInfo gsi : serverList) {
-            if (gsi.isAuthed()) {
-                gsi.getGameServerThread().requestCharacters(account);
+            GameServerThread gameServerThread = gsi.getGameServerThread();
+            if (gsi.isAuthed() && gameServerThread != null) {
+                // Sent from the game server link, a slow game server doesn't hold the login
+                ThreadPoolManagerService.getInstance().handlePacket(gameServerThread.getPacketMailbox(),
+                        () -> gameServerThread.requestCharacters(account));
             } else {
                 client.setCharsOnServ(gsi.getId(), 0);
             }
@@ -160,7 +245,7 @@ public class LoginServerController {
 
             if (loginOk && (client.getLastGameserver() != serverId)) {
                 //update account last server
-                AccountInfoRepository.getInstance().updateAccountLastServer(client.getUsername(), serverId);
+                AccountUpdateQueue.getInstance().queue(AccountUpdate.lastServer(client.getUsername(), serverId));
             }
             return loginOk;
         }
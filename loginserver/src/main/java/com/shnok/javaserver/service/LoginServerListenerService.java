@@ -1,10 +1,16 @@
 package com.shnok.javaserver.service;
 
+import com.shnok.javaserver.enums.TransportMode;
+import com.shnok.javaserver.thread.OutboundQueue;
+import com.shnok.javaserver.thread.SelectorThread;
 import lombok.extern.log4j.Log4j2;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 import static com.shnok.javaserver.config.Configuration.server;
 
@@ -12,6 +18,9 @@ import static com.shnok.javaserver.config.Configuration.server;
 public class LoginServerListenerService extends Thread {
     private int port;
     private ServerSocket serverSocket;
+    private TransportMode transportMode;
+    private SelectorThread[] selectorThreads;
+    private int nextSelector;
 
     private static LoginServerListenerService instance;
     public static LoginServerListenerService getInstance() {
@@ -24,12 +33,54 @@ public class LoginServerListenerService extends Thread {
     public void initialize() {
         try {
             port = server.loginserverPort();
-            serverSocket = new ServerSocket(port);
+            transportMode = server.loginserverTransport();
+
+            if (transportMode == TransportMode.NIO) {
+                ServerSocketChannel serverChannel = ServerSocketChannel.open();
+                serverChannel.bind(new InetSocketAddress(port));
+                serverSocket = serverChannel.socket();
+                startSelectorThreads();
+            } else {
+                serverSocket = new ServerSocket(port);
+            }
+
+            MetricsService.getInstance().register("outbound", OutboundQueue::pollStats);
         } catch (IOException e) {
             throw new RuntimeException("Could not create ServerSocket ", e);
         }
     }
 
+    private void startSelectorThreads() throws IOException {
+        selectorThreads = new SelectorThread[server.loginserverNioSelectorThreads()];
+        for (int i = 0; i < selectorThreads.length; i++) {
+            selectorThreads[i] = new SelectorThread(i);
+            selectorThreads[i].start();
+        }
+
+        log.info("Started {} selector thread(s) for client connections.", selectorThreads.length);
+    }
+
+    private void acceptClient(Socket connection) throws IOException {
+        if (transportMode == TransportMode.NIO) {
+            SocketChannel channel = connection.getChannel();
+            channel.configureBlocking(false);
+            SelectorThread selectorThread = selectorThreads[Math.floorMod(nextSelector++, selectorThreads.length)];
+            LoginServerController.getInstance().addClient(channel, selectorThread);
+        } else {
+            LoginServerController.getInstance().addClient(connection);
+        }
+    }
+
+    public void shutdownSelectorThreads() {
+        if (selectorThreads == null) {
+            return;
+        }
+
+        for (SelectorThread selectorThread : selectorThreads) {
+            selectorThread.interrupt();
+        }
+    }
+
     @Override
     public void run() {
         log.info("Login server listening on port {}. ", port);
@@ -37,7 +88,7 @@ public class LoginServerListenerService extends Thread {
             Socket connection = null;
             try {
                 connection = serverSocket.accept();
-                LoginServerController.getInstance().addClient(connection);
+                acceptClient(connection);
             } catch (Exception e) {
                 e.printStackTrace();
                 try {
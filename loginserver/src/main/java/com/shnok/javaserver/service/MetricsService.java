@@ -0,0 +1,56 @@
+package com.shnok.javaserver.service;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.shnok.javaserver.config.Configuration.server;
+
+/**
+ * Periodically logs the stats registered by the other services.
+ */
+@Log4j2
+public class MetricsService {
+    private final Map<String, Supplier<String>> reporters = new ConcurrentSkipListMap<>();
+
+    private static MetricsService instance;
+    public static MetricsService getInstance() {
+        if (instance == null) {
+            instance = new MetricsService();
+        }
+        return instance;
+    }
+
+    public void initialize() {
+        int interval = server.printMetricsIntervalSeconds();
+        if (interval <= 0) {
+            return;
+        }
+
+        ThreadPoolManagerService.getInstance().scheduleGeneralAtFixedRate(this::report, interval, interval,
+                TimeUnit.SECONDS);
+        log.info("Metrics will be printed every {} second(s).", interval);
+    }
+
+    /**
+     * Register a stats line printed on every report.
+     * @param name the name of the stats
+     * @param reporter supplier of the stats line
+     */
+    public void register(String name, Supplier<String> reporter) {
+        reporters.put(name, reporter);
+    }
+
+    private void report() {
+        reporters.forEach((name, reporter) -> {
+            try {
+                log.info("[METRICS] {}: {}", name, reporter.get());
+            } catch (Exception e) {
+                log.warn("Could not report {} metrics.", name, e);
+            }
+        });
+    }
+}
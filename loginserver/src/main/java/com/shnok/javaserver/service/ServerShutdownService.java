@@ -1,5 +1,6 @@
 package com.shnok.javaserver.service;
 
+import com.shnok.javaserver.db.repository.AccountUpdateQueue;
 import com.shnok.javaserver.thread.LoginClientThread;
 import lombok.extern.log4j.Log4j2;
 
@@ -23,6 +24,12 @@ public class ServerShutdownService extends Thread {
             e.printStackTrace();
         }
 
+        try {
+            LoginServerListenerService.getInstance().shutdownSelectorThreads();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
         try {
             for (LoginClientThread c : LoginServerController.getInstance().getAllClients()) {
                 c.interrupt();
@@ -30,6 +37,12 @@ public class ServerShutdownService extends Thread {
         } catch (Exception e) {
             e.printStackTrace();
         }
+
+        try {
+            AccountUpdateQueue.getInstance().shutdown();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
 //
 //        try {
 //            ThreadPoolManagerService.getInstance().shutdown();
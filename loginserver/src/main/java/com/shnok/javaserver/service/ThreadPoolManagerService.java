@@ -1,14 +1,34 @@
 package com.shnok.javaserver.service;
 
+import com.shnok.javaserver.enums.ThreadMode;
+import com.shnok.javaserver.thread.PacketMailbox;
 import lombok.extern.log4j.Log4j2;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.shnok.javaserver.config.Configuration.server;
 
 @Log4j2
 public class ThreadPoolManagerService {
-    private ThreadPoolExecutor packetsThreadPool;
+    private ExecutorService packetsThreadPool;
+    private ThreadPoolExecutor cryptoThreadPool;
+    private ThreadPoolExecutor ioThreadPool;
+    private ThreadPoolExecutor databaseThreadPool;
+    private ScheduledThreadPoolExecutor generalScheduledThreadPool;
+    private ThreadFactory virtualThreadFactory;
     private boolean shutdown = false;
 
     private static ThreadPoolManagerService instance;
@@ -21,17 +41,167 @@ public class ThreadPoolManagerService {
 
     public void initialize() {
         log.info("Initializing thread pool manager service.");
-        packetsThreadPool = new ThreadPoolExecutor(1, Integer.MAX_VALUE, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+        if (server.serverThreadMode() == ThreadMode.VIRTUAL) {
+            virtualThreadFactory = createVirtualThreadFactory("virtual-");
+        }
+
+        if (virtualThreadFactory != null) {
+            packetsThreadPool = createThreadPerTaskExecutor(virtualThreadFactory);
+            log.info("Connections and packets will run on virtual threads.");
+        } else {
+            int poolSize = server.serverThreadPoolSize();
+            if (poolSize <= 0) {
+                poolSize = Runtime.getRuntime().availableProcessors();
+            }
+
+            packetsThreadPool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), namedThreadFactory("PacketWorker-"));
+            log.info("Started {} packet worker thread(s).", poolSize);
+        }
+
+        int cryptoPoolSize = server.serverCryptoPoolSize();
+        if (cryptoPoolSize <= 0) {
+            cryptoPoolSize = Runtime.getRuntime().availableProcessors();
+        }
+        cryptoThreadPool = newStagePool(cryptoPoolSize, "Crypto-");
+        ioThreadPool = newStagePool(server.serverIoPoolSize(), "IO-");
+        // One thread per pooled connection, more would only wait for a connection
+        databaseThreadPool = newStagePool(server.databasePoolMaxSize(), "Database-");
+        log.info("Started {} crypto, {} io and {} database thread(s).", cryptoPoolSize,
+                ioThreadPool.getCorePoolSize(), databaseThreadPool.getCorePoolSize());
+
+        generalScheduledThreadPool = new ScheduledThreadPoolExecutor(1, namedThreadFactory("GeneralScheduled-"));
+
+        MetricsService.getInstance().register("packets", PacketMailbox::pollStats);
+        MetricsService.getInstance().register("stages", () -> String.format("crypto=%d/%d io=%d/%d db=%d/%d",
+                cryptoThreadPool.getQueue().size(), cryptoThreadPool.getActiveCount(),
+                ioThreadPool.getQueue().size(), ioThreadPool.getActiveCount(),
+                databaseThreadPool.getQueue().size(), databaseThreadPool.getActiveCount()));
+    }
+
+    /**
+     * Fixed pool with a bounded queue, tasks above its capacity are rejected instead of piling up.
+     */
+    private ThreadPoolExecutor newStagePool(int size, String prefix) {
+        return new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(server.serverStageQueueSize()), namedThreadFactory(prefix));
+    }
+
+    private ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Virtual threads are only available from Java 21, they are looked up reflectively so the server
+     * still builds and runs with platform threads on older runtimes.
+     * @param prefix the name prefix of created threads
+     * @return a virtual thread factory, or null if the runtime doesn't support them
+     */
+    private ThreadFactory createVirtualThreadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            log.warn("Virtual threads are not supported by this runtime ({}), using platform threads.",
+                    System.getProperty("java.version"));
+            return null;
+        }
+    }
+
+    private ExecutorService createThreadPerTaskExecutor(ThreadFactory factory) {
+        try {
+            Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) method.invoke(null, factory);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not create virtual thread executor.", e);
+        }
+    }
+
+    /**
+     * Start the reader of a connection, on its own platform thread or on a virtual thread.
+     * A virtual thread runs the connection as its task, the connection forwards its interrupts to it.
+     * @param connectionThread the connection to start reading
+     */
+    public void startConnectionThread(Thread connectionThread) {
+        if (virtualThreadFactory == null) {
+            connectionThread.start();
+            return;
+        }
+
+        Thread thread = virtualThreadFactory.newThread(connectionThread);
+        thread.setName(connectionThread.getName());
+        thread.start();
     }
 
-    public void handlePacket(Thread cph) {
-        packetsThreadPool.execute(cph);
+    /**
+     * Create the serial packet queue of a connection, drained by the packet worker pool.
+     * @return a new mailbox
+     */
+    public PacketMailbox newPacketMailbox() {
+        return new PacketMailbox(packetsThreadPool);
+    }
+
+    public void handlePacket(PacketMailbox mailbox, Runnable cph) {
+        mailbox.submit(cph);
+    }
+
+    /**
+     * Run a CPU bound task, such as an RSA decryption.
+     * @param task the task
+     * @throws RejectedExecutionException if the crypto queue is full
+     */
+    public void executeCrypto(Runnable task) {
+        cryptoThreadPool.execute(task);
+    }
+
+    /**
+     * Run a task blocking on the database or other I/O.
+     * @param task the task
+     * @throws RejectedExecutionException if the io queue is full
+     */
+    public void executeIO(Runnable task) {
+        ioThreadPool.execute(task);
+    }
+
+    /**
+     * Run a database call on the database threads.
+     * @param task the call
+     * @return the result of the call, failed with a {@link RejectedExecutionException} if the database queue is full
+     */
+    public <T> CompletableFuture<T> supplyDatabase(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, databaseThreadPool);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+
+    public ScheduledFuture<?> scheduleGeneral(Runnable task, long delay, TimeUnit unit) {
+        return generalScheduledThreadPool.schedule(task, delay, unit);
+    }
+
+    public ScheduledFuture<?> scheduleGeneralAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return generalScheduledThreadPool.scheduleAtFixedRate(task, initialDelay, period, unit);
     }
 
     public void shutdown() {
         shutdown = true;
 
         packetsThreadPool.shutdown();
+        cryptoThreadPool.shutdown();
+        ioThreadPool.shutdown();
+        databaseThreadPool.shutdown();
+        generalScheduledThreadPool.shutdown();
 
         purge();
 
@@ -43,6 +213,8 @@ public class ThreadPoolManagerService {
     }
 
     public void purge() {
-        packetsThreadPool.purge();
+        if (packetsThreadPool instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor) packetsThreadPool).purge();
+        }
     }
 }
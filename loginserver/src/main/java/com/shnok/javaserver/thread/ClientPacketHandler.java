@@ -1,70 +1,92 @@
 package com.shnok.javaserver.thread;
 
 import com.shnok.javaserver.db.entity.DBAccountInfo;
-import com.shnok.javaserver.db.repository.AccountInfoRepository;
+import com.shnok.javaserver.db.AccountUpdate;
+import com.shnok.javaserver.db.repository.AccountUpdateQueue;
+import com.shnok.javaserver.db.repository.CachedAccountInfoRepository;
 import com.shnok.javaserver.dto.external.clientpackets.AuthRequestPacket;
 import com.shnok.javaserver.dto.external.clientpackets.RequestServerListPacket;
 import com.shnok.javaserver.dto.external.clientpackets.RequestServerLoginPacket;
 import com.shnok.javaserver.dto.external.serverpackets.*;
 import com.shnok.javaserver.enums.*;
 import com.shnok.javaserver.enums.packettypes.external.ClientPacketType;
+import com.shnok.javaserver.enums.packettypes.external.ServerPacketType;
 import com.shnok.javaserver.model.GameServerInfo;
 import com.shnok.javaserver.model.SessionKey;
-import com.shnok.javaserver.security.NewCrypt;
+import com.shnok.javaserver.security.RSADecryptor;
 import com.shnok.javaserver.service.GameServerController;
 import com.shnok.javaserver.service.LoginServerController;
+import com.shnok.javaserver.service.ThreadPoolManagerService;
+import com.shnok.javaserver.dto.PacketReader;
+import com.shnok.javaserver.util.BufferPool;
 import lombok.extern.log4j.Log4j2;
 
-import javax.swing.*;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.net.InetAddress;
-import java.security.interfaces.RSAPrivateKey;
 import java.util.Arrays;
 import java.util.Base64;
-import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 import static com.shnok.javaserver.config.Configuration.server;
+import static com.shnok.javaserver.config.Configuration.snapshot;
 
 @Log4j2
-public class ClientPacketHandler extends Thread {
+public class ClientPacketHandler implements Runnable {
     private final LoginClientThread client;
     private final byte[] data;
-
-    public ClientPacketHandler(LoginClientThread client, byte[] data) {
+    private final int size;
+    private PacketReader reader;
+
+    /**
+     * @param client the connection which received the packet
+     * @param data a pooled array holding the packet, released once handled
+     * @param size the packet size
+     */
+    public ClientPacketHandler(LoginClientThread client, byte[] data, int size) {
         this.client = client;
         this.data = data;
+        this.size = size;
     }
 
     @Override
     public void run() {
-        handle();
+        // Packets sent while handling are written together once done
+        client.getOutboundQueue().cork();
+        try {
+            handle();
+        } finally {
+            BufferPool.getInstance().release(data);
+            client.getOutboundQueue().uncork();
+        }
     }
 
     public void handle() {
-        if(server.printCryptography()) {
-            log.debug("<--- [CLIENT] Encrypted packet {} : {}", data.length, Arrays.toString(data));
+        if(snapshot().printCryptography()) {
+            log.debug("<--- [CLIENT] Encrypted packet {} : {}", size, Arrays.toString(Arrays.copyOf(data, size)));
         }
 
+        boolean valid;
         try {
-            client.getLoginCrypt().decrypt(data, 0, data.length);
+            valid = client.getLoginCrypt().decrypt(data, 0, size);
         } catch (Exception e) {
             log.warn("[CLIENT] Error while decrypting client packet: ", e);
             return;
         }
 
-        if(server.printCryptography()) {
-            log.debug("<--- [CLIENT] Decrypted packet {} : {}", data.length, Arrays.toString(data));
+        if(snapshot().printCryptography()) {
+            log.debug("<--- [CLIENT] Decrypted packet {} : {}", size, Arrays.toString(Arrays.copyOf(data, size)));
         }
 
-        if(!NewCrypt.verifyChecksum(data)) {
+        if(!valid) {
             log.warn("[CLIENT] Packet's checksum is wrong.");
             return;
         }
 
         ClientPacketType type = ClientPacketType.fromByte(data[0]);
 
-        if(server.printReceivedPackets() && type != ClientPacketType.Ping) {
+        reader = client.getPacketReader().reset(data, 0, size);
+
+        if(snapshot().printReceivedPackets() && type != ClientPacketType.Ping) {
             log.debug("[CLIENT] Received packet: {}", type);
         }
 
@@ -73,7 +95,7 @@ public class ClientPacketHandler extends Thread {
                 onReceiveEcho();
                 break;
             case AuthRequest:
-                onReceiveAuth(client.getRSAPrivateKey());
+                onReceiveAuth(client.getRSADecryptor());
                 break;
             case RequestServerList:
                 onRequestServerList();
@@ -85,63 +107,118 @@ public class ClientPacketHandler extends Thread {
     }
 
     private void onReceiveEcho() {
-        client.sendPacket(new PingPacket());
-
-        Timer timer = new Timer(client.getConnectionTimeoutMs() + 100, new ActionListener() {
-            @Override
-            public void actionPerformed(ActionEvent arg0) {
-                if (System.currentTimeMillis() - client.getLastEcho() >= client.getConnectionTimeoutMs()) {
-                    log.info("User connection timeout.");
-                    client.disconnect();
-                }
-            }
-        });
-        timer.setRepeats(false);
-        timer.start();
+        client.sendConstantPacket(ServerPacketType.Ping, PingPacket::new);
 
-        client.setLastEcho(System.currentTimeMillis(), timer);
+        client.setLastEcho(System.currentTimeMillis());
     }
 
-    private void onReceiveAuth(RSAPrivateKey privateKey) {
-        AuthRequestPacket packet = new AuthRequestPacket(data, privateKey);
+    /**
+     * The RSA decryption runs on the crypto threads and the account is read on the database threads,
+     * the checks go on in whichever thread completes the read. The next packets of the client wait
+     * in its mailbox until they are done, no thread is held while waiting on the database.
+     */
+    private void onReceiveAuth(RSADecryptor decryptor) {
+        AuthRequestPacket packet = new AuthRequestPacket(reader);
+
+        client.getPacketMailbox().suspend();
+        try {
+            ThreadPoolManagerService.getInstance().executeCrypto(() -> decryptAuth(packet, decryptor));
+        } catch (RejectedExecutionException e) {
+            rejectAuth("crypto");
+        }
+    }
+
+    private void decryptAuth(AuthRequestPacket packet, RSADecryptor decryptor) {
+        // The mailbox must be resumed whatever happens, or the connection is never handled nor timed out again
+        boolean decrypted;
+        try {
+            decrypted = packet.decrypt(decryptor);
+        } catch (Exception e) {
+            log.warn("Error while decrypting login of {}.", client.getConnectionIp(), e);
+            decrypted = false;
+        }
+
+        if (!decrypted) {
+            try {
+                client.close(LoginFailReason.REASON_ACCESS_FAILED);
+            } finally {
+                client.getPacketMailbox().resume();
+            }
+            return;
+        }
+
         String account = packet.getAccount();
         byte[] passHashBytes = packet.getPassHashBytes();
 
-        log.debug("Received auth for account: {}", account);
+        // Any failure from here on, thrown or not, completes the chain
+        CompletableFuture.completedFuture(account)
+                .thenCompose(login -> CachedAccountInfoRepository.getInstance().getAccountInfoAsync(login))
+                .thenCompose(accountInfo -> authenticate(account, passHashBytes, accountInfo))
+                .whenComplete((ignored, e) -> {
+                    if (e == null) {
+                        client.getPacketMailbox().resume();
+                        return;
+                    }
+
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (cause instanceof RejectedExecutionException) {
+                        rejectAuth("database");
+                    } else {
+                        log.error("Error while authenticating account {}.", account, cause);
+                        client.close(LoginFailReason.REASON_ACCESS_FAILED_TRY_AGAIN_LATER);
+                        client.getPacketMailbox().resume();
+                    }
+                });
+    }
 
-        InetAddress clientAddr = client.getConnection().getInetAddress();
+    private void rejectAuth(String stage) {
+        log.warn("Login of {} refused, the {} queue is full.", client.getConnectionIp(), stage);
+        client.close(LoginFailReason.REASON_ACCESS_FAILED_TRY_AGAIN_LATER);
+        client.getPacketMailbox().resume();
+    }
 
-        DBAccountInfo accountInfo;
+    /**
+     * @param accountInfo the account read from the database, null if it doesn't exist
+     * @return completed once the account is checked in, or created and checked in
+     */
+    private CompletableFuture<Void> authenticate(String account, byte[] passHashBytes, DBAccountInfo accountInfo) {
+        log.debug("Received auth for account: {}", account);
 
         final String hashBase64 = Base64.getEncoder().encodeToString(passHashBytes);
-        accountInfo = AccountInfoRepository.getInstance().getAccountInfo(account);
 
         if (accountInfo != null) {
             if(!accountInfo.getPassHash().equals(hashBase64)) {
                 client.close(LoginFailReason.REASON_USER_OR_PASS_WRONG);
-                return;
+                return CompletableFuture.completedFuture(null);
             }
 
-        } else if (server.autoCreateAccount()) {
-            accountInfo = new DBAccountInfo();
-            accountInfo.setLogin(account);
-            accountInfo.setPassHash(hashBase64);
-            accountInfo.setLastActive(System.currentTimeMillis());
-            accountInfo.setLastIp(client.getConnectionIp());
-            AccountInfoRepository.getInstance().createAccount(accountInfo);
-            log.info("Autocreated account {}.", account);
-        } else {
+            checkIn(account, accountInfo);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (!server.autoCreateAccount()) {
             client.close(LoginFailReason.REASON_USER_OR_PASS_WRONG);
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
+        DBAccountInfo newAccount = new DBAccountInfo();
+        newAccount.setLogin(account);
+        newAccount.setPassHash(hashBase64);
+        newAccount.setLastActive(System.currentTimeMillis());
+        newAccount.setLastIp(client.getConnectionIp());
 
+        return CachedAccountInfoRepository.getInstance().createAccountAsync(newAccount).thenRun(() -> {
+            log.info("Autocreated account {}.", account);
+            checkIn(account, newAccount);
+        });
+    }
+
+    private void checkIn(String account, DBAccountInfo accountInfo) {
         AuthLoginResult result = tryCheckinAccount(accountInfo);
 
         switch (result) {
             case AUTH_SUCCESS:
 
-                client.setUsername(accountInfo.getLogin());
                 client.setLoginClientState(LoginClientState.AUTHED_LOGIN);
                 client.setSessionKey(LoginServerController.getInstance().getNewSessionKey());
 
@@ -196,7 +273,7 @@ public class ClientPacketHandler extends Thread {
                 // account isn't on any GS verify LS itself
                 ret = AuthLoginResult.ALREADY_ON_LS;
 
-                if (LoginServerController.getInstance().getClient(info.getLogin()) == null) {
+                if (LoginServerController.getInstance().checkInClient(info.getLogin(), client) == null) {
                     ret = AuthLoginResult.AUTH_SUCCESS;
                 }
             }
@@ -206,14 +283,7 @@ public class ClientPacketHandler extends Thread {
     }
 
     public GameServerInfo isAccountInAnyGameServer(String account) {
-        Collection<GameServerInfo> serverList = GameServerController.getInstance().getRegisteredGameServers().values();
-        for (GameServerInfo gsi : serverList) {
-            GameServerThread gst = gsi.getGameServerThread();
-            if ((gst != null) && gst.hasAccountOnGameServer(account)) {
-                return gsi;
-            }
-        }
-        return null;
+        return GameServerController.getInstance().getGameServerOfAccount(account);
     }
 
     public boolean canCheckIn(DBAccountInfo info) {
@@ -226,7 +296,8 @@ public class ClientPacketHandler extends Thread {
             info.setLastIp(client.getConnectionIp());
             info.setLastActive(System.currentTimeMillis());
 
-            AccountInfoRepository.getInstance().updateAccount(info);
+            AccountUpdateQueue.getInstance().queue(AccountUpdate.activity(info.getLogin(), info.getLastIp(),
+                    info.getLastActive()));
 
             return true;
         } catch (Exception ex) {
@@ -236,7 +307,7 @@ public class ClientPacketHandler extends Thread {
     }
 
     private void onRequestServerList() {
-        RequestServerListPacket packet = new RequestServerListPacket(data);
+        RequestServerListPacket packet = new RequestServerListPacket(reader);
 
         if(client.getSessionKey().checkLoginPair(packet.getSkey1(), packet.getSkey2())) {
             log.debug("Session key verified.");
@@ -247,7 +318,7 @@ public class ClientPacketHandler extends Thread {
     }
 
     private void onRequestServerLogin() {
-        RequestServerLoginPacket packet = new RequestServerLoginPacket(data);
+        RequestServerLoginPacket packet = new RequestServerLoginPacket(reader);
 
         SessionKey sk = client.getSessionKey();
         // if we didn't show the license we can't check these values
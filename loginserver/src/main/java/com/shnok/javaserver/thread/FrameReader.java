@@ -0,0 +1,106 @@
+package com.shnok.javaserver.thread;
+
+import com.shnok.javaserver.util.BufferPool;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Splits a blocking input stream in length prefixed frames.<br>
+ * The stream is read by chunks in a buffer owned by the connection, frames are copied in arrays
+ * taken from the {@link BufferPool} which must be released once the frame is handled.
+ */
+public class FrameReader {
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    // Size of the last frame read, the returned array is usually bigger
+    @Getter
+    private int frameSize;
+
+    /**
+     * @param in the socket input stream
+     * @param bufferSize size of the read buffer, frames bigger than it are read directly in their array
+     */
+    public FrameReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Block until a whole frame is received.
+     * @return a pooled array holding the frame in its first {@link #getFrameSize()} bytes,
+     * or null if the stream ended
+     * @throws IOException if the stream failed or ended in the middle of a frame
+     */
+    public byte[] readFrame() throws IOException {
+        if (!fill(2)) {
+            return null;
+        }
+
+        frameSize = (buffer[position] & 0xff) | ((buffer[position + 1] & 0xff) << 8);
+        position += 2;
+
+        byte[] frame = BufferPool.getInstance().acquire(frameSize);
+        try {
+            int copied = Math.min(limit - position, frameSize);
+            System.arraycopy(buffer, position, frame, 0, copied);
+            position += copied;
+
+            int remaining = frameSize - copied;
+            if (remaining >= buffer.length) {
+                // Not worth going through the buffer
+                readFully(frame, copied, remaining);
+            } else if (remaining > 0) {
+                if (!fill(remaining)) {
+                    throw new IOException("Connection closed in the middle of a frame.");
+                }
+                System.arraycopy(buffer, position, frame, copied, remaining);
+                position += remaining;
+            }
+        } catch (IOException e) {
+            BufferPool.getInstance().release(frame);
+            throw e;
+        }
+
+        return frame;
+    }
+
+    /**
+     * Read until the buffer holds at least the given number of bytes.
+     * @return false if the stream ended before
+     */
+    private boolean fill(int needed) throws IOException {
+        if (limit - position >= needed) {
+            return true;
+        }
+
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+
+        while (limit < needed) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                return false;
+            }
+            limit += read;
+        }
+        return true;
+    }
+
+    private void readFully(byte[] frame, int offset, int length) throws IOException {
+        while (length > 0) {
+            int read = in.read(frame, offset, length);
+            if (read < 0) {
+                throw new IOException("Connection closed in the middle of a frame.");
+            }
+            offset += read;
+            length -= read;
+        }
+    }
+}
@@ -11,48 +11,68 @@ import com.shnok.javaserver.model.SessionKey;
 import com.shnok.javaserver.security.NewCrypt;
 import com.shnok.javaserver.service.GameServerController;
 import com.shnok.javaserver.service.LoginServerController;
+import com.shnok.javaserver.dto.PacketReader;
+import com.shnok.javaserver.util.BufferPool;
 import lombok.extern.log4j.Log4j2;
 
 import java.util.Arrays;
 import java.util.List;
 
 import static com.shnok.javaserver.config.Configuration.server;
+import static com.shnok.javaserver.config.Configuration.snapshot;
 import static com.shnok.javaserver.dto.internal.gameserverpackets.ServerStatusPacket.MAX_PLAYERS;
 import static com.shnok.javaserver.dto.internal.gameserverpackets.ServerStatusPacket.SERVER_LIST_STATUS;
 import static com.shnok.javaserver.enums.GameServerState.BF_CONNECTED;
 
 @Log4j2
-public class GameServerPacketHandler extends Thread {
+public class GameServerPacketHandler implements Runnable {
     private final GameServerThread gameserver;
     private final byte[] data;
-
-    public GameServerPacketHandler(GameServerThread gameserver, byte[] data) {
+    private final int size;
+    private PacketReader reader;
+
+    /**
+     * @param gameserver the connection which received the packet
+     * @param data a pooled array holding the packet, released once handled
+     * @param size the packet size
+     */
+    public GameServerPacketHandler(GameServerThread gameserver, byte[] data, int size) {
         this.gameserver = gameserver;
         this.data = data;
+        this.size = size;
     }
 
     @Override
     public void run() {
-        handle();
+        // Packets sent while handling are written together once done
+        gameserver.getOutboundQueue().cork();
+        try {
+            handle();
+        } finally {
+            BufferPool.getInstance().release(data);
+            gameserver.getOutboundQueue().uncork();
+        }
     }
 
     public void handle() {
-        if(server.printCryptography()) {
-            log.debug("<--- [GAME] Encrypted packet {} : {}", data.length, Arrays.toString(data));
+        if(snapshot().printCryptography()) {
+            log.debug("<--- [GAME] Encrypted packet {} : {}", size, Arrays.toString(Arrays.copyOf(data, size)));
         }
-        gameserver.getBlowfish().decrypt(data, 0, data.length);
-        if(server.printCryptography()) {
-            log.debug("<--- [GAME] Decrypted packet {} : {}", data.length, Arrays.toString(data));
+        boolean valid = gameserver.getBlowfish().decryptAndVerifyChecksum(data, 0, size);
+        if(snapshot().printCryptography()) {
+            log.debug("<--- [GAME] Decrypted packet {} : {}", size, Arrays.toString(Arrays.copyOf(data, size)));
         }
 
-        if(!NewCrypt.verifyChecksum(data)) {
+        if(!valid) {
             log.warn("Packet's checksum is wrong.");
             return;
         }
 
         GameServerPacketType type = GameServerPacketType.fromByte(data[0]);
 
-        if(server.printReceivedPackets()) {
+        reader = gameserver.getPacketReader().reset(data, 0, size);
+
+        if(snapshot().printReceivedPackets()) {
             log.debug("[GAME] Received packet: {}", type);
         }
 
@@ -97,7 +117,7 @@ public class GameServerPacketHandler extends Thread {
     }
 
     private void onReceiveBlowfishKey() {
-        BlowFishKeyPacket packet = new BlowFishKeyPacket(data, gameserver);
+        BlowFishKeyPacket packet = new BlowFishKeyPacket(reader, gameserver);
 
         gameserver.setBlowfish(new NewCrypt(packet.getBlowFishKey()));
 
@@ -105,7 +125,7 @@ public class GameServerPacketHandler extends Thread {
     }
 
     private void onReceiveAuthRequest() {
-        GameServerAuthPacket packet = new GameServerAuthPacket(data);
+        GameServerAuthPacket packet = new GameServerAuthPacket(reader);
 
         log.info("Auth request received.");
 
@@ -185,7 +205,7 @@ public class GameServerPacketHandler extends Thread {
     }
 
     private void onReceiveServerStatus() {
-        ServerStatusPacket packet = new ServerStatusPacket(data);
+        ServerStatusPacket packet = new ServerStatusPacket(reader);
 
         GameServerInfo gsi = gameserver.getGameServerInfo();
         for (ServerStatusPacket.Attribute attribute: packet.getAttributes()) {
@@ -201,7 +221,7 @@ public class GameServerPacketHandler extends Thread {
     }
 
     private void onReceivePlayerInGame() {
-        PlayerInGamePacket packet = new PlayerInGamePacket(data);
+        PlayerInGamePacket packet = new PlayerInGamePacket(reader);
 
         List<String> loggedUsers = packet.getLoggedUsers();
 
@@ -213,7 +233,7 @@ public class GameServerPacketHandler extends Thread {
     }
 
     private void onReceivePlayerLogout() {
-        PlayerLogoutPacket packet = new PlayerLogoutPacket(data);
+        PlayerLogoutPacket packet = new PlayerLogoutPacket(reader);
 
         gameserver.removeAccountOnGameServer(packet.getPlayer());
 
@@ -223,7 +243,7 @@ public class GameServerPacketHandler extends Thread {
     }
 
     private void onReceiveCharacters() {
-        ReplyCharactersPacket packet = new ReplyCharactersPacket(data);
+        ReplyCharactersPacket packet = new ReplyCharactersPacket(reader);
 
         log.info("Received {} character(s) for account {}.", packet.getCharCount(), packet.getAccount());
         LoginServerController.getInstance().setCharactersOnServer(packet.getAccount(),
@@ -231,7 +251,7 @@ public class GameServerPacketHandler extends Thread {
     }
 
     private void onReceivePlayerAuthRequest() {
-        PlayerAuthRequestPacket packet = new PlayerAuthRequestPacket(data);
+        PlayerAuthRequestPacket packet = new PlayerAuthRequestPacket(reader);
 
         SessionKey sessionKey = new SessionKey(packet.getLoginOkID1(), packet.getLoginOkID2(),
                 packet.getPlayOkID1(), packet.getPlayOkID2());
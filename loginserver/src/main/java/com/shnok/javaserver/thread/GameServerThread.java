@@ -1,5 +1,6 @@
 package com.shnok.javaserver.thread;
 
+import com.shnok.javaserver.dto.PacketReader;
 import com.shnok.javaserver.dto.SendablePacket;
 import com.shnok.javaserver.dto.internal.loginserverpackets.InitLSPacket;
 import com.shnok.javaserver.dto.internal.loginserverpackets.KickPlayerPacket;
@@ -9,10 +10,12 @@ import com.shnok.javaserver.enums.GameServerState;
 import com.shnok.javaserver.enums.packettypes.internal.LoginServerPacketType;
 import com.shnok.javaserver.model.GameServerInfo;
 import com.shnok.javaserver.security.NewCrypt;
+import com.shnok.javaserver.security.RSADecryptor;
 import com.shnok.javaserver.service.GameServerController;
 import com.shnok.javaserver.service.GameServerListenerService;
 import com.shnok.javaserver.service.ThreadPoolManagerService;
 import com.shnok.javaserver.util.ServerNameDAO;
+import com.shnok.javaserver.util.TimeoutWheel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.log4j.Log4j2;
@@ -22,7 +25,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
-import java.security.KeyPair;
+import java.nio.ByteBuffer;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
 import java.util.Arrays;
@@ -30,20 +33,35 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import static com.shnok.javaserver.config.Configuration.server;
+import static com.shnok.javaserver.config.Configuration.snapshot;
 
 @Getter
 @Setter
 @Log4j2
 public class GameServerThread extends Thread {
+    private static final int READ_BUFFER_SIZE = 8192;
+
     private InputStream in;
+    private FrameReader frameReader;
     private OutputStream out;
+    private final OutboundQueue outboundQueue = new OutboundQueue(this::writeFrames);
+    private final PacketMailbox packetMailbox = ThreadPoolManagerService.getInstance().newPacketMailbox();
+    // Only used by the packet handlers, which run one at a time per connection
+    private final PacketReader packetReader = new PacketReader();
     private Socket connection;
     private RSAPublicKey publicKey;
     private RSAPrivateKey privateKey;
+    private RSADecryptor rsaDecryptor;
     private NewCrypt blowfish;
     private GameServerState loginConnectionState = GameServerState.CONNECTED;
+    private final long handshakeDeadline;
+    private final int linkTimeoutMs;
+    private volatile long lastPacket;
+    private final TimeoutWheel.Timeout timeout;
     private final String connectionIp;
     private GameServerInfo gameServerInfo;
+    // Thread actually reading the connection, a virtual thread running this one in virtual mode
+    private volatile Thread readerThread;
 
     /**
      * Authed Clients on a GameServer
@@ -58,52 +76,74 @@ public class GameServerThread extends Thread {
 
         try {
             in = connection.getInputStream();
+            frameReader = new FrameReader(in, READ_BUFFER_SIZE);
             out = new BufferedOutputStream(connection.getOutputStream());
             log.debug("New gameserver connection: {}", connectionIp);
         } catch (IOException e) {
             e.printStackTrace();
         }
 
-        KeyPair pair = GameServerController.getInstance().getKeyPair();
-        privateKey = (RSAPrivateKey) pair.getPrivate();
-        publicKey = (RSAPublicKey) pair.getPublic();
+        rsaDecryptor = GameServerController.getInstance().getRSADecryptor();
+        privateKey = rsaDecryptor.getPrivateKey();
+        publicKey = (RSAPublicKey) rsaDecryptor.getPair().getPublic();
         blowfish = new NewCrypt("_;v.]05-31!|+-%xT!^[$\00");
+
+        lastPacket = System.currentTimeMillis();
+        linkTimeoutMs = server.gameserverLinkTimeoutMs();
+        handshakeDeadline = lastPacket + server.serverHandshakeTimeoutMs();
+        timeout = TimeoutWheel.getInstance().schedule(this::onTimeout, server.serverHandshakeTimeoutMs());
         setName(getClass().getSimpleName() + "-" + Thread.currentThread().getId() + "@" + connectionIp);
     }
 
     @Override
     public void run() {
+        bindReaderThread();
         startReadingPackets();
     }
 
-    private void startReadingPackets() {
-        int lengthHi;
-        int lengthLo;
-        int length;
+    /**
+     * In virtual mode this object is only the task of the thread reading the connection,
+     * interrupting it must reach that thread.
+     */
+    private void bindReaderThread() {
+        readerThread = Thread.currentThread();
+        // Interrupted before the reader started
+        if (readerThread != this && super.isInterrupted()) {
+            readerThread.interrupt();
+        }
+    }
+
+    @Override
+    public void interrupt() {
+        Thread reader = readerThread;
+        if (reader == null || reader == this) {
+            super.interrupt();
+        } else {
+            reader.interrupt();
+        }
+    }
 
+    @Override
+    public boolean isInterrupted() {
+        Thread reader = readerThread;
+        return reader == null || reader == this ? super.isInterrupted() : reader.isInterrupted();
+    }
+
+    private void startReadingPackets() {
         try {
             sendPacket(new InitLSPacket(publicKey.getModulus().toByteArray()));
 
             for (; ; ) {
-                lengthLo = in.read();
-                lengthHi = in.read();
-                length = (lengthHi * 256) + lengthLo;
+                byte[] data = frameReader.readFrame();
 
-                if ((lengthHi < 0) || connection.isClosed()) {
+                if ((data == null) || connection.isClosed()) {
                     log.warn("Gameserver terminated the connection!");
                     break;
                 }
 
-                byte[] data = new byte[length];
+                lastPacket = System.currentTimeMillis();
 
-                int receivedBytes = 0;
-                int newBytes = 0;
-                while ((newBytes != -1) && (receivedBytes < (length))) {
-                    newBytes = in.read(data, 0, length);
-                    receivedBytes = receivedBytes + newBytes;
-                }
-
-                handlePacket(data);
+                handlePacket(data, frameReader.getFrameSize());
             }
         } catch (Exception e) {
         } finally {
@@ -112,47 +152,43 @@ public class GameServerThread extends Thread {
         }
     }
 
-    private void handlePacket(byte[] data) {
-        ThreadPoolManagerService.getInstance().handlePacket(new GameServerPacketHandler(this, data));
+    private void handlePacket(byte[] data, int size) {
+        ThreadPoolManagerService.getInstance().handlePacket(packetMailbox, new GameServerPacketHandler(this, data, size));
     }
 
     public void sendPacket(SendablePacket packet) {
         LoginServerPacketType packetType = LoginServerPacketType.fromByte(packet.getType());
 
-        if(server.printSentPackets()) {
+        if(snapshot().printSentPackets()) {
             log.debug("[GAME] Sent packet: {}", packetType);
         }
 
-        NewCrypt.appendChecksum(packet.getData());
-
-        if(server.printCryptography()) {
+        if(snapshot().printCryptography()) {
             log.debug("---> [GAME] Clear packet {} : {}", packet.getData().length, Arrays.toString(packet.getData()));
         }
-        blowfish.crypt(packet.getData(), 0, packet.getData().length);
-        if(server.printCryptography()) {
+        blowfish.appendChecksumAndCrypt(packet.getData(), 0, packet.getData().length);
+        if(snapshot().printCryptography()) {
             log.debug("---> [GAME] Encrypted packet {} : {}", packet.getData().length, Arrays.toString(packet.getData()));
         }
 
-        try {
-            synchronized (out) {
-                out.write((byte)(packet.getData().length) & 0xff);
-                out.write((byte)((packet.getData().length) >> 8) & 0xff);
-
-                for (byte b : packet.getData()) {
-                    out.write(b & 0xFF);
-                }
-                out.flush();
-            }
+        outboundQueue.send(packet.getData());
+    }
 
-        } catch (IOException e) {
-            log.warn("Trying to send packet to a gameserver connection.");
+    private void writeFrames(ByteBuffer[] frames) throws IOException {
+        for (ByteBuffer frame : frames) {
+            out.write(frame.array(), frame.position(), frame.remaining());
         }
+        out.flush();
     }
 
     public void disconnect() {
+        timeout.cancel();
+        outboundQueue.flush();
+
         try {
-            if (gameServerInfo.isAuthed()) {
+            if (gameServerInfo != null && gameServerInfo.isAuthed()) {
                 gameServerInfo.setDown();
+                GameServerController.getInstance().removeAccountsInGame(accountsOnGameServer, getServerId());
 
                 log.info("Server {}[{}] is now disconnected.", ServerNameDAO.getServer(gameServerInfo.getId()),
                         gameServerInfo.getId());
@@ -166,6 +202,38 @@ public class GameServerThread extends Thread {
         }
     }
 
+    /**
+     * Runs on the timeout wheel, the deadlines are checked in the mailbox with the packets.
+     */
+    private void onTimeout() {
+        ThreadPoolManagerService.getInstance().handlePacket(packetMailbox, this::checkTimeout);
+    }
+
+    private void checkTimeout() {
+        long now = System.currentTimeMillis();
+        boolean authed = loginConnectionState == GameServerState.AUTHED;
+
+        if (!authed && now >= handshakeDeadline) {
+            log.warn("Gameserver {} did not authenticate in time.", connectionIp);
+            disconnect();
+            return;
+        }
+
+        if (linkTimeoutMs > 0 && now - lastPacket >= linkTimeoutMs) {
+            log.warn("Gameserver {} link timed out.", connectionIp);
+            disconnect();
+            return;
+        }
+
+        long deadline = linkTimeoutMs > 0 ? lastPacket + linkTimeoutMs : Long.MAX_VALUE;
+        if (!authed) {
+            deadline = Math.min(deadline, handshakeDeadline);
+        }
+        if (deadline != Long.MAX_VALUE) {
+            timeout.reschedule(Math.max(deadline - now, 0));
+        }
+    }
+
     public void attachGameServerInfo(GameServerInfo gsi, int port, String[] hosts, int maxPlayers) {
         log.debug("Attaching gameserver with ID: {}.", gsi.getId());
 
@@ -214,10 +282,12 @@ public class GameServerThread extends Thread {
 
     public void addAccountOnGameServer(String account) {
         accountsOnGameServer.add(account);
+        GameServerController.getInstance().addAccountInGame(account, getServerId());
     }
 
     public void removeAccountOnGameServer(String account) {
         accountsOnGameServer.remove(account);
+        GameServerController.getInstance().removeAccountInGame(account, getServerId());
     }
 
     public void setBlowfish(NewCrypt newCrypt) {
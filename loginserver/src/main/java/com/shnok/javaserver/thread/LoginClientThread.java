@@ -1,5 +1,6 @@
 package com.shnok.javaserver.thread;
 
+import com.shnok.javaserver.dto.PacketReader;
 import com.shnok.javaserver.dto.SendablePacket;
 import com.shnok.javaserver.dto.external.serverpackets.*;
 import com.shnok.javaserver.enums.AccountKickedReason;
@@ -8,46 +9,59 @@ import com.shnok.javaserver.enums.LoginFailReason;
 import com.shnok.javaserver.enums.PlayFailReason;
 import com.shnok.javaserver.enums.packettypes.external.ServerPacketType;
 import com.shnok.javaserver.model.SessionKey;
+import com.shnok.javaserver.security.BlowfishKey;
 import com.shnok.javaserver.security.LoginCrypt;
+import com.shnok.javaserver.security.RSADecryptor;
 import com.shnok.javaserver.security.Rnd;
 import com.shnok.javaserver.security.ScrambledKeyPair;
 import com.shnok.javaserver.service.LoginServerController;
 import com.shnok.javaserver.service.ThreadPoolManagerService;
+import com.shnok.javaserver.util.TimeoutWheel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.log4j.Log4j2;
 
-import javax.swing.*;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
-import java.security.interfaces.RSAPrivateKey;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.security.interfaces.RSAPublicKey;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import static com.shnok.javaserver.config.Configuration.server;
+import static com.shnok.javaserver.config.Configuration.snapshot;
 
 @Getter
 @Setter
 @Log4j2
 public class LoginClientThread extends Thread {
+    private static final int READ_BUFFER_SIZE = 2048;
+
     private final Socket connection;
     private final String connectionIp;
     public boolean authenticated;
     private InputStream in;
+    private FrameReader frameReader;
     private OutputStream out;
+    private final OutboundQueue outboundQueue = new OutboundQueue(this::writeFrames);
+    private final PacketMailbox packetMailbox = ThreadPoolManagerService.getInstance().newPacketMailbox();
+    // Only used by the packet handlers, which run one at a time per connection
+    private final PacketReader packetReader = new PacketReader();
     private String username;
     private boolean clientReady = false;
     private long lastEcho;
-    private Timer watchDog;
+    private final long handshakeDeadline;
+    private final TimeoutWheel.Timeout timeout;
     private LoginClientState loginClientState;
     private final LoginCrypt loginCrypt;
     private final ScrambledKeyPair scrambledPair;
-    private final byte[] blowfishKey;
+    private final BlowfishKey blowfishKey;
     private int accessLevel;
     private int lastGameserver;
     private boolean joinedGS;
@@ -57,8 +71,28 @@ public class LoginClientThread extends Thread {
     private Map<Integer, long[]> charsToDelete;
     private int connectionTimeoutMs;
     private int expectedCharacterCount;
-
+    private SelectorThread.Connection selectorConnection;
+    // Thread actually reading the connection, a virtual thread running this one in virtual mode
+    private volatile Thread readerThread;
+
+    /**
+     * Instantiates a client read by its own blocking thread.
+     * @param con the accepted socket
+     */
     public LoginClientThread(Socket con) {
+        this(con, null);
+    }
+
+    /**
+     * Instantiates a client multiplexed on a selector thread, it must not be started.
+     * @param channel the accepted non-blocking channel
+     * @param selectorThread the selector thread reading this client
+     */
+    public LoginClientThread(SocketChannel channel, SelectorThread selectorThread) {
+        this(channel.socket(), selectorThread);
+    }
+
+    private LoginClientThread(Socket con, SelectorThread selectorThread) {
         connection = con;
         connectionIp = con.getInetAddress().getHostAddress();
         scrambledPair = LoginServerController.getInstance().getScrambledRSAKeyPair();
@@ -67,9 +101,18 @@ public class LoginClientThread extends Thread {
         loginCrypt.setKey(blowfishKey);
         sessionId = Rnd.nextInt();
         connectionTimeoutMs = server.serverConnectionTimeoutMs();
+        handshakeDeadline = System.currentTimeMillis() + server.serverHandshakeTimeoutMs();
+        timeout = TimeoutWheel.getInstance().schedule(this::onTimeout, server.serverHandshakeTimeoutMs());
+
+        if (selectorThread != null) {
+            selectorConnection = selectorThread.newConnection(this);
+            log.debug("New connection: {}", connectionIp);
+            return;
+        }
 
         try {
             in = connection.getInputStream();
+            frameReader = new FrameReader(in, READ_BUFFER_SIZE);
             out = new BufferedOutputStream(connection.getOutputStream());
             log.debug("New connection: {}" + connectionIp);
         } catch (IOException e) {
@@ -79,41 +122,55 @@ public class LoginClientThread extends Thread {
 
     @Override
     public void run() {
+        bindReaderThread();
         startReadingPackets();
     }
 
-    private void startReadingPackets() {
-        int lengthHi;
-        int lengthLo;
-        int length;
+    /**
+     * In virtual mode this object is only the task of the thread reading the connection,
+     * interrupting it must reach that thread.
+     */
+    private void bindReaderThread() {
+        readerThread = Thread.currentThread();
+        // Interrupted before the reader started
+        if (readerThread != this && super.isInterrupted()) {
+            readerThread.interrupt();
+        }
+    }
 
+    @Override
+    public void interrupt() {
+        Thread reader = readerThread;
+        if (reader == null || reader == this) {
+            super.interrupt();
+        } else {
+            reader.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isInterrupted() {
+        Thread reader = readerThread;
+        return reader == null || reader == this ? super.isInterrupted() : reader.isInterrupted();
+    }
+
+    private void startReadingPackets() {
         try {
 //            System.out.println("MODULUS " + ((RSAPublicKey) scrambledPair.getPair().getPublic()).getModulus().toByteArray().length +   " : " + Arrays.toString(((RSAPublicKey) scrambledPair.getPair().getPublic()).getModulus().toByteArray()));
 //            System.out.println("EXP: " + Arrays.toString(((RSAPublicKey) scrambledPair.getPair().getPublic()).getPublicExponent().toByteArray()));
 //            System.out.println("SCRAMBLED: " + Arrays.toString(getScrambledPair().getScrambledModulus()));
 
-            sendPacket(new InitPacket(getScrambledPair().getScrambledModulus(), getBlowfishKey(), sessionId));
+            sendInitPacket();
 
             for (; ; ) {
-                lengthLo = in.read();
-                lengthHi = in.read();
-                length = (lengthHi * 256) + lengthLo;
+                byte[] data = frameReader.readFrame();
 
-                if ((lengthHi < 0) || connection.isClosed()) {
+                if ((data == null) || connection.isClosed()) {
                     log.warn("Loginserver terminated the connection!");
                     break;
                 }
 
-                byte[] data = new byte[length];
-
-                int receivedBytes = 0;
-                int newBytes = 0;
-                while ((newBytes != -1) && (receivedBytes < (length))) {
-                    newBytes = in.read(data, 0, length);
-                    receivedBytes = receivedBytes + newBytes;
-                }
-
-                handlePacket(data);
+                handlePacket(data, frameReader.getFrameSize());
             }
         } catch (Exception e) {
             log.error("Exception while reading client packets.");
@@ -123,22 +180,29 @@ public class LoginClientThread extends Thread {
         }
     }
 
+    public void sendInitPacket() {
+        sendPacket(new InitPacket(scrambledPair.getInitTemplate(blowfishKey), sessionId));
+    }
+
     public void close(AccountKickedReason kickedReason) {
-        sendPacket(new AccountKickedPacket(kickedReason));
+        sendConstantPacket(kickedReason, () -> new AccountKickedPacket(kickedReason));
         disconnect();
     }
 
     public void close(LoginFailReason failReason) {
-        sendPacket(new LoginFailPacket(failReason));
+        sendConstantPacket(failReason, () -> new LoginFailPacket(failReason));
         disconnect();
     }
 
     public void close(PlayFailReason failReason) {
-        sendPacket(new PlayFailPacket(failReason));
+        sendConstantPacket(failReason, () -> new PlayFailPacket(failReason));
         disconnect();
     }
 
     public void disconnect() {
+        timeout.cancel();
+        outboundQueue.flush();
+
         try {
             removeSelf();
             connection.close();
@@ -150,50 +214,109 @@ public class LoginClientThread extends Thread {
     public boolean sendPacket(SendablePacket packet) {
         ServerPacketType packetType = ServerPacketType.fromByte(packet.getType());
 
-        if(server.printSentPackets() && packetType != ServerPacketType.Ping) {
+        if(snapshot().printSentPackets() && packetType != ServerPacketType.Ping) {
             log.debug("[CLIENT] Sent packet: {}", packetType);
         }
 
-        if(server.printCryptography()) {
+        if(snapshot().printCryptography()) {
             log.debug("---> [CLIENT] Clear packet {} : {}", packet.getData().length, Arrays.toString(packet.getData()));
         }
         if(!encrypt(packet.getData(), packet.getData().length)) {
             return false;
         }
-        if(server.printCryptography()) {
+        if(snapshot().printCryptography()) {
             log.debug("---> [CLIENT] Encrypted packet {} : {}", packet.getData().length, Arrays.toString(packet.getData()));
         }
 
-        try {
-            synchronized (out) {
-                out.write((byte)(packet.getData().length) & 0xff);
-                out.write((byte)((packet.getData().length) >> 8) & 0xff);
+        return outboundQueue.send(packet.getData());
+    }
 
-                for (byte b : packet.getData()) {
-                    out.write(b & 0xFF);
-                }
-                out.flush();
-            }
+    /**
+     * Send a packet whose content never changes, its encrypted frame is built once per blowfish key.
+     * @param id identifies the packet content, such as its fail reason
+     * @param factory builds the packet
+     * @return false if the connection can't be written anymore
+     */
+    public boolean sendConstantPacket(Object id, Supplier<? extends SendablePacket> factory) {
+        // The first packet is encrypted with the static key
+        if (loginCrypt.isStatic()) {
+            return sendPacket(factory.get());
+        }
 
-            return true;
-        } catch (IOException e) {
-            log.warn("Trying to send packet to a closed game client.");
+        if(snapshot().printSentPackets() && id != ServerPacketType.Ping) {
+            log.debug("[CLIENT] Sent packet: {}", id);
         }
 
-        return false;
+        return outboundQueue.sendFrame(blowfishKey.getEncryptedFrame(id, factory));
     }
 
-    void handlePacket(byte[] data) {
-        ThreadPoolManagerService.getInstance().handlePacket(new ClientPacketHandler(this, data));
-    }
+    private void writeFrames(ByteBuffer[] frames) throws IOException {
+        if (selectorConnection != null) {
+            selectorConnection.write(frames);
+            return;
+        }
 
-    public void setLastEcho(long lastEcho, Timer watchDog) {
-        if(this.watchDog != null) {
-            watchDog.stop();
+        for (ByteBuffer frame : frames) {
+            out.write(frame.array(), frame.position(), frame.remaining());
         }
+        out.flush();
+    }
+
+    /**
+     * Queue a received frame for handling.
+     * @param data a pooled array holding the frame, released once handled
+     * @param size the frame size
+     */
+    void handlePacket(byte[] data, int size) {
+        ThreadPoolManagerService.getInstance().handlePacket(packetMailbox, new ClientPacketHandler(this, data, size));
+    }
 
+    /**
+     * Push the idle deadline of the connection.
+     * @param lastEcho time of the last ping, in milliseconds
+     */
+    public void setLastEcho(long lastEcho) {
         this.lastEcho = lastEcho;
-        this.watchDog = watchDog;
+        rescheduleTimeout(lastEcho);
+    }
+
+    /**
+     * Runs on the timeout wheel, the deadlines are checked in the mailbox with the packets.
+     */
+    private void onTimeout() {
+        ThreadPoolManagerService.getInstance().handlePacket(packetMailbox, this::checkTimeout);
+    }
+
+    private void checkTimeout() {
+        long now = System.currentTimeMillis();
+
+        if (loginClientState != LoginClientState.AUTHED_LOGIN && now >= handshakeDeadline) {
+            log.info("Client {} did not authenticate in time.", connectionIp);
+            disconnect();
+            return;
+        }
+
+        if (lastEcho != 0 && now - lastEcho >= connectionTimeoutMs) {
+            log.info("User connection timeout.");
+            disconnect();
+            return;
+        }
+
+        rescheduleTimeout(now);
+    }
+
+    /**
+     * The handshake deadline applies until the client is authed, the idle deadline once it sent a ping.
+     */
+    private void rescheduleTimeout(long now) {
+        long deadline = lastEcho == 0 ? Long.MAX_VALUE : lastEcho + connectionTimeoutMs;
+        if (loginClientState != LoginClientState.AUTHED_LOGIN) {
+            deadline = Math.min(deadline, handshakeDeadline);
+        }
+
+        if (deadline != Long.MAX_VALUE) {
+            timeout.reschedule(Math.max(deadline - now, 0));
+        }
     }
 
     void authenticate() {
@@ -214,8 +337,8 @@ public class LoginClientThread extends Thread {
         this.interrupt();
     }
 
-    public RSAPrivateKey getRSAPrivateKey() {
-        return (RSAPrivateKey) scrambledPair.getPair().getPrivate();
+    public RSADecryptor getRSADecryptor() {
+        return scrambledPair.getDecryptor();
     }
 
     public boolean decrypt(byte[] packetData, int size) {
@@ -0,0 +1,150 @@
+package com.shnok.javaserver.thread;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Outgoing frames of a single connection.<br>
+ * Senders only queue their frame, whichever thread gets the write lock writes every queued frame
+ * with a single flush, so packets sent together or by concurrent threads share the same write.
+ * While corked, frames are only queued until the connection is uncorked or flushed.
+ */
+@Log4j2
+public class OutboundQueue {
+    private static final LongAdder BYTES = new LongAdder();
+    private static final LongAdder FRAMES = new LongAdder();
+    private static final LongAdder FLUSHES = new LongAdder();
+    private static final AtomicLong LAST_POLL = new AtomicLong(System.nanoTime());
+
+    private final FrameSink sink;
+    private final Queue<ByteBuffer> frames = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicInteger corked = new AtomicInteger();
+    // Only used by the thread holding the write lock
+    private final List<ByteBuffer> batch = new ArrayList<>();
+    private volatile boolean failed;
+
+    public OutboundQueue(FrameSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Queue an encrypted packet and write it unless the queue is corked.
+     * @param data the packet data, without length header
+     * @return false if the connection can't be written anymore
+     */
+    public boolean send(byte[] data) {
+        ByteBuffer frame = ByteBuffer.allocate(data.length + 2);
+        frame.put((byte) (data.length & 0xff));
+        frame.put((byte) ((data.length >> 8) & 0xff));
+        frame.put(data);
+        frame.flip();
+        return enqueue(frame);
+    }
+
+    /**
+     * Queue a frame already encrypted and framed, and write it unless the queue is corked.
+     * @param frame the frame, length header included, only read
+     * @return false if the connection can't be written anymore
+     */
+    public boolean sendFrame(byte[] frame) {
+        return enqueue(ByteBuffer.wrap(frame));
+    }
+
+    private boolean enqueue(ByteBuffer frame) {
+        if (failed) {
+            return false;
+        }
+
+        frames.add(frame);
+
+        if (corked.get() == 0) {
+            drain();
+        }
+        return !failed;
+    }
+
+    /**
+     * Hold the frames sent from now on, until the matching {@link #uncork()}.
+     */
+    public void cork() {
+        corked.incrementAndGet();
+    }
+
+    public void uncork() {
+        if (corked.decrementAndGet() == 0) {
+            drain();
+        }
+    }
+
+    /**
+     * Write the queued frames, even if corked.
+     */
+    public void flush() {
+        drain();
+    }
+
+    private void drain() {
+        // A sender failing to get the lock leaves its frame to the holder, which checks the queue after unlocking
+        while (!frames.isEmpty() && writeLock.tryLock()) {
+            try {
+                ByteBuffer frame;
+                int bytes = 0;
+                while ((frame = frames.poll()) != null) {
+                    batch.add(frame);
+                    bytes += frame.remaining();
+                }
+
+                if (batch.isEmpty() || failed) {
+                    continue;
+                }
+
+                sink.write(batch.toArray(new ByteBuffer[0]));
+
+                BYTES.add(bytes);
+                FRAMES.add(batch.size());
+                FLUSHES.increment();
+            } catch (IOException e) {
+                log.warn("Could not write to connection: {}", e.getMessage());
+                failed = true;
+                frames.clear();
+            } finally {
+                batch.clear();
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Summarize the outgoing traffic of all connections since the previous call.
+     * @return the stats line
+     */
+    public static String pollStats() {
+        long now = System.nanoTime();
+        double seconds = Math.max(now - LAST_POLL.getAndSet(now), 1) / 1_000_000_000d;
+        long frames = FRAMES.sumThenReset();
+        long flushes = FLUSHES.sumThenReset();
+
+        return String.format("bytes/s=%.0f packets/s=%.1f flushes/s=%.1f packets/flush=%.2f",
+                BYTES.sumThenReset() / seconds, frames / seconds, flushes / seconds,
+                flushes == 0 ? 0d : (double) frames / flushes);
+    }
+
+    /**
+     * Writes a batch of frames, length header included, and flushes them to the socket.
+     */
+    @FunctionalInterface
+    public interface FrameSink {
+        void write(ByteBuffer[] frames) throws IOException;
+    }
+}
@@ -0,0 +1,140 @@
+package com.shnok.javaserver.thread;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serial queue of packet handlers for a single connection.<br>
+ * Handlers of one connection run one at a time and in arrival order (its crypt state depends on it),
+ * while the mailboxes of different connections are drained in parallel by the shared worker pool.
+ */
+@Log4j2
+public class PacketMailbox implements Runnable {
+    // Handlers run before yielding the worker to other connections
+    private static final int MAX_BATCH = 16;
+
+    private static final LongAdder QUEUED = new LongAdder();
+    private static final LongAdder HANDLED = new LongAdder();
+    private static final LongAdder WAIT_NANOS = new LongAdder();
+    private static final AtomicLong MAX_WAIT_NANOS = new AtomicLong();
+
+    private final Executor executor;
+    private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    // Only accessed by the thread running the mailbox
+    private boolean suspended;
+    // Counts the mailbox and the resumer reaching the end of a suspended handler, the second one goes on
+    private final AtomicInteger handoff = new AtomicInteger();
+
+    public PacketMailbox(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Queue a handler, the mailbox is scheduled on the worker pool if it was idle.
+     * @param handler the packet handler
+     */
+    public void submit(Runnable handler) {
+        tasks.add(new Task(handler, System.nanoTime()));
+        QUEUED.increment();
+
+        if (pending.getAndIncrement() == 0) {
+            executor.execute(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        for (int i = 0; i < MAX_BATCH; i++) {
+            Task task = tasks.poll();
+            QUEUED.decrement();
+            recordWait(System.nanoTime() - task.queuedAt);
+
+            try {
+                task.handler.run();
+            } catch (Throwable e) {
+                // Errors too, leaving the loop here would leave the mailbox busy and the connection dead
+                log.error("Error while handling packet.", e);
+            }
+            HANDLED.increment();
+
+            if (suspended) {
+                // The handler goes on elsewhere, the mailbox stays busy until it is resumed
+                suspended = false;
+                if (!handedOff()) {
+                    return;
+                }
+            }
+
+            if (pending.decrementAndGet() == 0) {
+                return;
+            }
+        }
+
+        // Still busy, go back at the end of the worker queue
+        executor.execute(this);
+    }
+
+    /**
+     * Called by the running handler when it hands its work over to another thread,
+     * the next packets of the connection wait until {@link #resume()} is called.
+     */
+    public void suspend() {
+        suspended = true;
+    }
+
+    /**
+     * Called once by the thread finishing the work of a suspended handler.
+     */
+    public void resume() {
+        if (handedOff() && pending.decrementAndGet() != 0) {
+            executor.execute(this);
+        }
+    }
+
+    private boolean handedOff() {
+        if (handoff.incrementAndGet() < 2) {
+            return false;
+        }
+        handoff.set(0);
+        return true;
+    }
+
+    public int size() {
+        return pending.get();
+    }
+
+    private static void recordWait(long waitNanos) {
+        WAIT_NANOS.add(waitNanos);
+        MAX_WAIT_NANOS.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    /**
+     * Summarize the handlers queued across all mailboxes and their wait time since the previous call.
+     * @return the stats line
+     */
+    public static String pollStats() {
+        long handled = HANDLED.sumThenReset();
+        long waitNanos = WAIT_NANOS.sumThenReset();
+        long maxWaitNanos = MAX_WAIT_NANOS.getAndSet(0);
+
+        return String.format("queued=%d handled=%d avgWait=%.3fms maxWait=%.3fms", QUEUED.sum(), handled,
+                handled == 0 ? 0d : waitNanos / (handled * 1_000_000d), maxWaitNanos / 1_000_000d);
+    }
+
+    private static class Task {
+        private final Runnable handler;
+        private final long queuedAt;
+
+        private Task(Runnable handler, long queuedAt) {
+            this.handler = handler;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.shnok.javaserver.thread;
+
+import com.shnok.javaserver.util.BufferPool;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Reactor thread multiplexing many non-blocking client connections.<br>
+ * Reads are framed (2-byte little-endian length) and handed to {@link LoginClientThread#handlePacket(byte[], int)},
+ * writes are attempted directly by the sender and finished here when the socket buffer is full.
+ */
+@Log4j2
+public class SelectorThread extends Thread {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Selector selector;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final Queue<Connection> pendingRegistrations = new ConcurrentLinkedQueue<>();
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    public SelectorThread(int id) throws IOException {
+        super("SelectorThread-" + id);
+        selector = Selector.open();
+    }
+
+    /**
+     * Create the connection handle used by a client to write its packets.
+     * @param client the client owning a non-blocking channel
+     * @return the connection handle, to be registered once the client is ready
+     */
+    public Connection newConnection(LoginClientThread client) {
+        return new Connection(client, client.getConnection().getChannel());
+    }
+
+    /**
+     * Queue a connection for registration on this selector, the init packet is sent once registered.
+     * @param connection the connection handle
+     */
+    public void register(Connection connection) {
+        pendingRegistrations.add(connection);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        log.info("{} started.", getName());
+        while (!isInterrupted()) {
+            try {
+                selector.select();
+                processRegistrations();
+                processPendingWrites();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush(key);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(connection);
+                        }
+                    } catch (CancelledKeyException e) {
+                        connection.client.disconnect();
+                    } catch (IOException e) {
+                        log.debug("Connection {} closed: {}", connection.client.getConnectionIp(), e.getMessage());
+                        connection.client.disconnect();
+                    }
+                }
+            } catch (IOException e) {
+                log.error("{}: Error while selecting keys.", getName(), e);
+            }
+        }
+
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.error("Error while closing selector.", e);
+        }
+    }
+
+    private void processRegistrations() {
+        Connection connection;
+        while ((connection = pendingRegistrations.poll()) != null) {
+            try {
+                connection.key = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+                connection.client.sendInitPacket();
+            } catch (ClosedChannelException e) {
+                connection.client.disconnect();
+            }
+        }
+    }
+
+    private void processPendingWrites() {
+        Connection connection;
+        while ((connection = pendingWrites.poll()) != null) {
+            SelectionKey key = connection.key;
+            if (key != null && key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        readBuffer.clear();
+        int read = connection.channel.read(readBuffer);
+        if (read < 0) {
+            log.info("User {} disconnected", connection.client.getConnectionIp());
+            connection.client.disconnect();
+            return;
+        }
+
+        readBuffer.flip();
+        while (readBuffer.hasRemaining()) {
+            byte[] frame = connection.decode(readBuffer);
+            if (frame != null) {
+                connection.client.handlePacket(frame, connection.frameSize);
+            }
+        }
+    }
+
+    /**
+     * Per-client framing and write state, attached to the selection key.
+     */
+    public final class Connection {
+        private final LoginClientThread client;
+        private final SocketChannel channel;
+        private final Queue<ByteBuffer> writeQueue = new ArrayDeque<>();
+        private SelectionKey key;
+
+        private int lengthLo = -1;
+        private byte[] frame;
+        private int frameSize;
+        private int frameOffset;
+
+        private Connection(LoginClientThread client, SocketChannel channel) {
+            this.client = client;
+            this.channel = channel;
+        }
+
+        /**
+         * Consume bytes from the selector read buffer.
+         * @return a pooled array holding a complete frame of {@code frameSize} bytes, or null if more bytes are needed
+         */
+        private byte[] decode(ByteBuffer in) {
+            if (frame == null) {
+                if (lengthLo < 0) {
+                    lengthLo = in.get() & 0xFF;
+                    if (!in.hasRemaining()) {
+                        return null;
+                    }
+                }
+                int length = ((in.get() & 0xFF) << 8) | lengthLo;
+                lengthLo = -1;
+                frame = BufferPool.getInstance().acquire(length);
+                frameSize = length;
+                frameOffset = 0;
+            }
+
+            int count = Math.min(in.remaining(), frameSize - frameOffset);
+            in.get(frame, frameOffset, count);
+            frameOffset += count;
+
+            if (frameOffset < frameSize) {
+                return null;
+            }
+
+            byte[] complete = frame;
+            frame = null;
+            return complete;
+        }
+
+        /**
+         * Write frames to the channel in a single gathering write,
+         * anything the socket can't take right away is finished by the selector.
+         * @param frames the frames, headers included
+         * @throws IOException if the channel is closed
+         */
+        public void write(ByteBuffer[] frames) throws IOException {
+            synchronized (writeQueue) {
+                if (writeQueue.isEmpty()) {
+                    channel.write(frames);
+                }
+                for (ByteBuffer frame : frames) {
+                    if (frame.hasRemaining()) {
+                        writeQueue.add(frame);
+                    }
+                }
+                if (writeQueue.isEmpty()) {
+                    return;
+                }
+            }
+
+            pendingWrites.add(this);
+            selector.wakeup();
+        }
+
+        private void flush(SelectionKey key) throws IOException {
+            synchronized (writeQueue) {
+                channel.write(writeQueue.toArray(new ByteBuffer[0]));
+                while (!writeQueue.isEmpty() && !writeQueue.peek().hasRemaining()) {
+                    writeQueue.poll();
+                }
+                if (writeQueue.isEmpty()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+        }
+    }
+}
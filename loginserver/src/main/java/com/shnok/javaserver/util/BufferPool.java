@@ -0,0 +1,145 @@
+package com.shnok.javaserver.util;
+
+import com.shnok.javaserver.service.MetricsService;
+import com.shnok.javaserver.service.ThreadPoolManagerService;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recycles the arrays holding received frames.<br>
+ * Arrays are grouped in power of two size classes, from 64 bytes up to the largest possible frame.
+ * The number of arrays kept per class follows the sizes of the frames received lately,
+ * within a fixed memory budget.
+ */
+@Log4j2
+public class BufferPool {
+    private static final int MIN_CLASS_SHIFT = 6;
+    private static final int MAX_CLASS_SHIFT = 16;
+    private static final int CLASSES = MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1;
+    private static final long MAX_POOLED_BYTES = 4L * 1024 * 1024;
+    private static final int MIN_POOLED_PER_CLASS = 8;
+    private static final int REBALANCE_INTERVAL_SECONDS = 10;
+
+    private static final BufferPool instance = new BufferPool();
+    public static BufferPool getInstance() {
+        return instance;
+    }
+
+    private final SizeClass[] classes = new SizeClass[CLASSES];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private BufferPool() {
+        for (int i = 0; i < CLASSES; i++) {
+            classes[i] = new SizeClass(1 << (MIN_CLASS_SHIFT + i));
+        }
+    }
+
+    public void initialize() {
+        ThreadPoolManagerService.getInstance().scheduleGeneralAtFixedRate(this::rebalance,
+                REBALANCE_INTERVAL_SECONDS, REBALANCE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        MetricsService.getInstance().register("buffer-pool", this::getStats);
+    }
+
+    /**
+     * Get an array able to hold at least the given size, its length is usually bigger.
+     * @param size the number of bytes needed
+     * @return a pooled or new array
+     */
+    public byte[] acquire(int size) {
+        SizeClass sizeClass = classes[classIndex(size)];
+        sizeClass.requested.increment();
+
+        byte[] buffer = sizeClass.buffers.poll();
+        if (buffer != null) {
+            sizeClass.pooled.decrementAndGet();
+            hits.increment();
+            return buffer;
+        }
+
+        misses.increment();
+        return new byte[sizeClass.size];
+    }
+
+    /**
+     * Give an array back, it must not be used by the caller anymore.
+     * @param buffer an array obtained from {@link #acquire(int)}
+     */
+    public void release(byte[] buffer) {
+        int index = classIndex(buffer.length);
+        SizeClass sizeClass = classes[index];
+        if (sizeClass.size != buffer.length) {
+            return;
+        }
+
+        if (sizeClass.pooled.incrementAndGet() > sizeClass.maxPooled) {
+            sizeClass.pooled.decrementAndGet();
+            return;
+        }
+        sizeClass.buffers.add(buffer);
+    }
+
+    private static int classIndex(int size) {
+        if (size <= (1 << MIN_CLASS_SHIFT)) {
+            return 0;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+        return Math.min(shift, MAX_CLASS_SHIFT) - MIN_CLASS_SHIFT;
+    }
+
+    /**
+     * Split the memory budget between the size classes according to the bytes requested from each of them
+     * since the last rebalance, and trim the classes above their new limit.
+     */
+    private void rebalance() {
+        long[] requestedBytes = new long[CLASSES];
+        long totalBytes = 0;
+        for (int i = 0; i < CLASSES; i++) {
+            requestedBytes[i] = classes[i].requested.sumThenReset() * classes[i].size;
+            totalBytes += requestedBytes[i];
+        }
+
+        if (totalBytes == 0) {
+            return;
+        }
+
+        for (int i = 0; i < CLASSES; i++) {
+            SizeClass sizeClass = classes[i];
+            long budget = MAX_POOLED_BYTES * requestedBytes[i] / totalBytes;
+            sizeClass.maxPooled = (int) Math.max(MIN_POOLED_PER_CLASS, budget / sizeClass.size);
+
+            while (sizeClass.pooled.get() > sizeClass.maxPooled && sizeClass.buffers.poll() != null) {
+                sizeClass.pooled.decrementAndGet();
+            }
+        }
+    }
+
+    public String getStats() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("hits=").append(hits.sum()).append(" misses=").append(misses.sum()).append(" pooled=[");
+        for (SizeClass sizeClass : classes) {
+            if (sizeClass.pooled.get() > 0) {
+                sb.append(' ').append(sizeClass.size).append(':').append(sizeClass.pooled.get())
+                        .append('/').append(sizeClass.maxPooled);
+            }
+        }
+        return sb.append(" ]").toString();
+    }
+
+    private static class SizeClass {
+        private final int size;
+        private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pooled = new AtomicInteger();
+        private final LongAdder requested = new LongAdder();
+        private volatile int maxPooled = MIN_POOLED_PER_CLASS;
+
+        private SizeClass(int size) {
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.shnok.javaserver.util;
+
+import com.shnok.javaserver.service.MetricsService;
+import com.shnok.javaserver.service.ThreadPoolManagerService;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hashed timing wheel running the connection timeouts.<br>
+ * Timeouts are kept in a ring of buckets, one per tick, only the bucket of the current tick is looked at.
+ * Moving a deadline later only updates the timeout, it is filed again when its old bucket comes up,
+ * so connections pushing their deadline on every packet cost nothing to the wheel.
+ * Buckets are linked lists only touched by the general scheduler thread, other threads go through a queue.
+ */
+@Log4j2
+public class TimeoutWheel {
+    private static final int TICK_MS = 100;
+    // Power of two, one turn of the wheel lasts about 51 seconds
+    private static final int WHEEL_SIZE = 512;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private static final TimeoutWheel instance = new TimeoutWheel();
+    public static TimeoutWheel getInstance() {
+        return instance;
+    }
+
+    private final long startNanos = System.nanoTime();
+    private final Bucket[] buckets = new Bucket[WHEEL_SIZE];
+    // Timeouts scheduled or brought forward since the last tick
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    // Only used by the scheduler thread
+    private long processedTick;
+    private int pending;
+
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+
+    private TimeoutWheel() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    public void initialize() {
+        ThreadPoolManagerService.getInstance().scheduleGeneralAtFixedRate(this::tick, TICK_MS, TICK_MS,
+                TimeUnit.MILLISECONDS);
+        MetricsService.getInstance().register("timeouts", this::pollStats);
+    }
+
+    /**
+     * Run a task once the delay is elapsed, on the scheduler thread.
+     * The task should only hand the work off to the connection, it delays the other timeouts.
+     * @param task the task
+     * @param delayMs the delay in milliseconds
+     * @return the timeout, to push back or cancel
+     */
+    public Timeout schedule(Runnable task, long delayMs) {
+        Timeout timeout = new Timeout(task);
+        timeout.reschedule(delayMs);
+        return timeout;
+    }
+
+    private long currentMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private void tick() {
+        long now = currentMillis();
+
+        Timeout timeout;
+        while ((timeout = incoming.poll()) != null) {
+            file(timeout, processedTick + 1);
+        }
+
+        long currentTick = now / TICK_MS;
+        while (processedTick < currentTick) {
+            processedTick++;
+            expire(processedTick, now);
+        }
+    }
+
+    private void file(Timeout timeout, long minTick) {
+        if (timeout.cancelled) {
+            return;
+        }
+
+        long tick = Math.max((timeout.deadline + TICK_MS - 1) / TICK_MS, minTick);
+        if (timeout.bucket != null) {
+            if (timeout.tick == tick) {
+                return;
+            }
+            // Brought forward
+            timeout.bucket.remove(timeout);
+        } else {
+            pending++;
+        }
+
+        timeout.tick = tick;
+        buckets[(int) (tick & WHEEL_MASK)].add(timeout);
+    }
+
+    private void expire(long tick, long now) {
+        Bucket bucket = buckets[(int) (tick & WHEEL_MASK)];
+
+        Timeout next;
+        for (Timeout timeout = bucket.head; timeout != null; timeout = next) {
+            next = timeout.next;
+            if (timeout.tick > tick) {
+                // Due on a later turn of the wheel
+                continue;
+            }
+
+            bucket.remove(timeout);
+            pending--;
+
+            if (timeout.cancelled) {
+                cancelled.increment();
+                continue;
+            }
+            if (timeout.deadline > now) {
+                // Pushed back since it was filed
+                file(timeout, tick + 1);
+                continue;
+            }
+
+            timeout.queued = false;
+            expired.increment();
+
+            try {
+                timeout.task.run();
+            } catch (Exception e) {
+                log.error("Error while running a timeout.", e);
+            }
+        }
+    }
+
+    /**
+     * @return the timeouts waiting and the expirations since the previous call
+     */
+    public String pollStats() {
+        return String.format("pending=%d expired=%d cancelled=%d", pending, expired.sumThenReset(),
+                cancelled.sumThenReset());
+    }
+
+    /**
+     * A deadline of the wheel, it can be moved any number of times until it expires or is cancelled.
+     */
+    public final class Timeout {
+        private final Runnable task;
+        private volatile long deadline;
+        private volatile boolean queued;
+        private volatile boolean cancelled;
+        // Position in the wheel, only used by the scheduler thread
+        private long tick;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * Move the deadline, or set it again once the timeout expired.
+         * @param delayMs the delay from now in milliseconds
+         */
+        public void reschedule(long delayMs) {
+            long next = currentMillis() + delayMs;
+            long previous = deadline;
+            deadline = next;
+
+            // A later deadline is picked up when the current bucket comes up
+            if (!queued || next < previous) {
+                queued = true;
+                incoming.add(this);
+            }
+        }
+
+        /**
+         * Drop the timeout, it can't be rescheduled afterwards.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Timeouts due on the same tick of any turn of the wheel.
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+}
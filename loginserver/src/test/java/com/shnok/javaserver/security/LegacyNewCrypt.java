@@ -0,0 +1,90 @@
+package com.shnok.javaserver.security;
+
+/**
+ * {@link NewCrypt} as it was before the checksum was folded into the block passes,
+ * the checksum and the cipher each walk the packet once.<br>
+ * Kept unchanged as the reference the current cipher must match, the checksum only works on packets at offset 0.
+ */
+public final class LegacyNewCrypt {
+    private final LegacyBlowfishEngine _cipher;
+
+    public LegacyNewCrypt(byte[] blowfishKey) {
+        this._cipher = new LegacyBlowfishEngine();
+        this._cipher.init(blowfishKey);
+    }
+
+    public LegacyNewCrypt(String key) {
+        this(key.getBytes());
+    }
+
+    public static boolean verifyChecksum(byte[] raw) {
+        return verifyChecksum(raw, 0, raw.length);
+    }
+
+    public static boolean verifyChecksum(byte[] raw, int offset, int size) {
+        if ((size & 3) == 0 && size > 4) {
+            long chksum = 0L;
+            int count = size - 4;
+
+            long check;
+            int i;
+            for(i = offset; i < count; i += 4) {
+                check = (long)(raw[i] & 255);
+                check |= (long)(raw[i + 1] << 8 & '\uff00');
+                check |= (long)(raw[i + 2] << 16 & 16711680);
+                check |= (long)(raw[i + 3] << 24 & -16777216);
+                chksum ^= check;
+            }
+
+            check = (long)(raw[i] & 255);
+            check |= (long)(raw[i + 1] << 8 & '\uff00');
+            check |= (long)(raw[i + 2] << 16 & 16711680);
+            check |= (long)(raw[i + 3] << 24 & -16777216);
+            return check == chksum;
+        } else {
+            return false;
+        }
+    }
+
+    public static void appendChecksum(byte[] raw) {
+        appendChecksum(raw, 0, raw.length);
+    }
+
+    public static void appendChecksum(byte[] raw, int offset, int size) {
+        long chksum = 0L;
+        int count = size - 4;
+
+        long ecx;
+        int i;
+        for(i = offset; i < count; i += 4) {
+            ecx = (long)(raw[i] & 255);
+            ecx |= (long)(raw[i + 1] << 8 & '\uff00');
+            ecx |= (long)(raw[i + 2] << 16 & 16711680);
+            ecx |= (long)(raw[i + 3] << 24 & -16777216);
+            chksum ^= ecx;
+        }
+
+        ecx = (long)(raw[i] & 255);
+        ecx |= (long)(raw[i + 1] << 8 & '\uff00');
+        ecx |= (long)(raw[i + 2] << 16 & 16711680);
+        long var10000 = ecx | (long)(raw[i + 3] << 24 & -16777216);
+        raw[i] = (byte)((int)(chksum & 255L));
+        raw[i + 1] = (byte)((int)(chksum >> 8 & 255L));
+        raw[i + 2] = (byte)((int)(chksum >> 16 & 255L));
+        raw[i + 3] = (byte)((int)(chksum >> 24 & 255L));
+    }
+
+    public void decrypt(byte[] raw, int offset, int size) {
+        for(int i = offset; i < offset + size; i += 8) {
+            this._cipher.decryptBlock(raw, i);
+        }
+
+    }
+
+    public void crypt(byte[] raw, int offset, int size) {
+        for(int i = offset; i < offset + size; i += 8) {
+            this._cipher.encryptBlock(raw, i);
+        }
+
+    }
+}
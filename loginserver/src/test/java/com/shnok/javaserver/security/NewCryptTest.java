@@ -0,0 +1,142 @@
+package com.shnok.javaserver.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs random packets through the current single-pass cipher and through {@link LegacyNewCrypt},
+ * both must produce the same bytes.
+ */
+public class NewCryptTest {
+    private static final int ROUNDS = 2000;
+    private static final int MAX_BLOCKS = 64;
+
+    // Fixed seed, a failure can be replayed
+    private final Random random = new Random(0x5EEDL);
+
+    @Test
+    public void cryptMatchesLegacy() {
+        for (int round = 0; round < ROUNDS; round++) {
+            byte[] key = randomKey();
+            byte[] packet = randomPacket();
+
+            byte[] expected = packet.clone();
+            new LegacyNewCrypt(key).crypt(expected, 0, expected.length);
+            byte[] actual = packet.clone();
+            new NewCrypt(key).crypt(actual, 0, actual.length);
+            assertArrayEquals(expected, actual, "crypt, round " + round);
+
+            new LegacyNewCrypt(key).decrypt(expected, 0, expected.length);
+            new NewCrypt(key).decrypt(actual, 0, actual.length);
+            assertArrayEquals(packet, expected, "legacy decrypt, round " + round);
+            assertArrayEquals(packet, actual, "decrypt, round " + round);
+        }
+    }
+
+    @Test
+    public void appendChecksumAndCryptMatchesLegacy() {
+        for (int round = 0; round < ROUNDS; round++) {
+            byte[] key = randomKey();
+            byte[] packet = randomPacket();
+
+            byte[] expected = packet.clone();
+            LegacyNewCrypt legacy = new LegacyNewCrypt(key);
+            LegacyNewCrypt.appendChecksum(expected, 0, expected.length);
+            legacy.crypt(expected, 0, expected.length);
+
+            byte[] actual = packet.clone();
+            new NewCrypt(key).appendChecksumAndCrypt(actual, 0, actual.length);
+
+            assertArrayEquals(expected, actual, "round " + round);
+        }
+    }
+
+    @Test
+    public void decryptAndVerifyChecksumMatchesLegacy() {
+        for (int round = 0; round < ROUNDS; round++) {
+            byte[] key = randomKey();
+            byte[] packet = randomPacket();
+            LegacyNewCrypt legacy = new LegacyNewCrypt(key);
+            LegacyNewCrypt.appendChecksum(packet, 0, packet.length);
+            legacy.crypt(packet, 0, packet.length);
+
+            // Every other packet is damaged in transit
+            boolean tampered = (round & 1) == 1;
+            if (tampered) {
+                packet[random.nextInt(packet.length)] ^= (byte) (1 + random.nextInt(255));
+            }
+
+            byte[] expected = packet.clone();
+            legacy.decrypt(expected, 0, expected.length);
+            boolean expectedValid = LegacyNewCrypt.verifyChecksum(expected, 0, expected.length);
+
+            byte[] actual = packet.clone();
+            boolean actualValid = new NewCrypt(key).decryptAndVerifyChecksum(actual, 0, actual.length);
+
+            assertEquals(!tampered, expectedValid, "legacy checksum, round " + round);
+            assertEquals(expectedValid, actualValid, "checksum, round " + round);
+            assertArrayEquals(expected, actual, "round " + round);
+        }
+    }
+
+    @Test
+    public void packetsAtAnOffsetMatchLegacy() {
+        for (int round = 0; round < ROUNDS; round++) {
+            byte[] key = randomKey();
+            byte[] packet = randomPacket();
+
+            // The legacy checksum ignores the offset, it runs on a copy of the packet alone
+            byte[] expected = packet.clone();
+            LegacyNewCrypt.appendChecksum(expected, 0, expected.length);
+            new LegacyNewCrypt(key).crypt(expected, 0, expected.length);
+
+            int offset = 1 + random.nextInt(15);
+            byte[] buffer = new byte[offset + packet.length + 8];
+            random.nextBytes(buffer);
+            byte[] untouched = buffer.clone();
+            System.arraycopy(packet, 0, buffer, offset, packet.length);
+
+            NewCrypt crypt = new NewCrypt(key);
+            crypt.appendChecksumAndCrypt(buffer, offset, packet.length);
+            assertArrayEquals(expected, Arrays.copyOfRange(buffer, offset, offset + packet.length), "round " + round);
+
+            assertTrue(crypt.decryptAndVerifyChecksum(buffer, offset, packet.length), "round " + round);
+            assertArrayEquals(Arrays.copyOfRange(untouched, 0, offset), Arrays.copyOfRange(buffer, 0, offset),
+                    "bytes before the packet, round " + round);
+            assertArrayEquals(Arrays.copyOfRange(untouched, offset + packet.length, untouched.length),
+                    Arrays.copyOfRange(buffer, offset + packet.length, buffer.length),
+                    "bytes after the packet, round " + round);
+        }
+    }
+
+    @Test
+    public void unalignedPacketsAreRejected() {
+        NewCrypt crypt = new NewCrypt(randomKey());
+        byte[] packet = new byte[MAX_BLOCKS * 8];
+
+        assertFalse(crypt.decryptAndVerifyChecksum(packet, 0, 0));
+        for (int size = 1; size < 8; size++) {
+            assertFalse(crypt.decryptAndVerifyChecksum(packet, 0, 8 + size), "size " + (8 + size));
+        }
+    }
+
+    private byte[] randomKey() {
+        // Blowfish takes keys of 4 to 56 bytes, the login server uses 16
+        byte[] key = new byte[4 + random.nextInt(53)];
+        random.nextBytes(key);
+        return key;
+    }
+
+    private byte[] randomPacket() {
+        byte[] packet = new byte[8 * (1 + random.nextInt(MAX_BLOCKS))];
+        random.nextBytes(packet);
+        return packet;
+    }
+}